@@ -0,0 +1,240 @@
+import javax.swing.SwingUtilities;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+// ==========================================================
+//            ANÁLISIS EN SEGUNDO PLANO PARA LA INTERFAZ
+// ==========================================================
+//
+// La interfaz no genera jugadas ni busca en el hilo de eventos (EDT):
+// pide el trabajo a este servicio, que lo hace sobre una copia propia de
+// la posición (un Position inmutable para moves; un GameState con su
+// historial para analyze) y entrega el resultado con
+// SwingUtilities.invokeLater.
+//
+//   moves     destinos de una pieza, jaque y jugadas legales (hilo "rápido")
+//   analyze   búsqueda que publica cada iteración completada (hilo "motor")
+//   loadFen   validación y carga de una FEN
+//   history   FEN de cada posición del historial (sobre una copia)
+//
+// Cada petición nueva del mismo tipo deja obsoletas las anteriores: las
+// que aún no han empezado no se ejecutan, la búsqueda en curso se para y
+// los resultados que lleguen tarde se descartan. Todos los métodos se
+// llaman desde el EDT y los callbacks se ejecutan en el EDT.
+
+public final class AnalysisService implements AutoCloseable {
+
+    /** Jugadas de una pieza en la posición con clave key. */
+    public static final class Moves {
+        public final long key;
+        public final int square;
+        public final long targets;          // casillas destino (bit = casilla)
+        public final int[] moves;           // jugadas legales desde square
+        public final boolean inCheck;
+
+        Moves(long key, int square, long targets, int[] moves, boolean inCheck) {
+            this.key = key;
+            this.square = square;
+            this.targets = targets;
+            this.moves = moves;
+            this.inCheck = inCheck;
+        }
+    }
+
+    /** Una actualización del análisis de la posición con clave key. */
+    public static final class Evaluation {
+        public final long key;
+        public final int legalMoves;        // 0 = mate o ahogado
+        public final boolean inCheck;
+        public final int outcome;           // GameState.ONGOING o cómo ha terminado la partida
+        public final int depth;             // 0 = aún sin búsqueda
+        public final int whiteScore;        // centipeones desde el punto de vista de las blancas
+        public final long nodes;
+        public final long millis;
+        public final String line;           // variante principal en SAN numerada
+        public final boolean finished;
+
+        Evaluation(long key, int legalMoves, boolean inCheck, int outcome, int depth, int whiteScore,
+                   long nodes, long millis, String line, boolean finished) {
+            this.key = key;
+            this.legalMoves = legalMoves;
+            this.inCheck = inCheck;
+            this.outcome = outcome;
+            this.depth = depth;
+            this.whiteScore = whiteScore;
+            this.nodes = nodes;
+            this.millis = millis;
+            this.line = line;
+            this.finished = finished;
+        }
+    }
+
+    private static final int HASH_MB = 32;
+    private static final int MAX_DEPTH = 64;
+
+    private final long budgetMs;
+    private final ExecutorService quick = daemon("analysis-moves");
+    private final ExecutorService engine = daemon("analysis-engine");
+    private final AtomicLong movesGen = new AtomicLong(), analysisGen = new AtomicLong(), fenGen = new AtomicLong();
+    private final AtomicLong historyGen = new AtomicLong();
+    private volatile Search search;                  // se crea en el primer analyze (tabla incluida)
+
+    /** Servicio cuyas búsquedas duran como mucho budgetMs milisegundos. */
+    public AnalysisService(long budgetMs) {
+        this.budgetMs = budgetMs;
+    }
+
+    public AnalysisService() {
+        this(30_000);
+    }
+
+    private static ExecutorService daemon(String name) {
+        return Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, name);
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    // ==========================================================
+    //                         PETICIONES
+    // ==========================================================
+
+    /** Jugadas legales de la pieza en square; onResult no se llama si llega otra petición antes. */
+    public void moves(GameState pos, int square, Consumer<Moves> onResult) {
+        long gen = movesGen.incrementAndGet();
+        Position snapshot = pos.position();
+        quick.execute(() -> {
+            if (gen != movesGen.get()) return;
+            int[] all = new int[GameState.MAX_MOVES];
+            int n = snapshot.legalMoves(all), k = 0;
+            long targets = 0;
+            for (int i = 0; i < n; i++) {
+                if (Move.from(all[i]) != square) continue;
+                targets |= 1L << Move.to(all[i]);
+                all[k++] = all[i];
+            }
+            Moves m = new Moves(snapshot.key(), square, targets, java.util.Arrays.copyOf(all, k),
+                    snapshot.isInCheck());
+            publish(movesGen, gen, () -> onResult.accept(m));
+        });
+    }
+
+    /**
+     * Analiza la posición hasta agotar el presupuesto o hasta la siguiente
+     * petición. La primera actualización (depth 0) llega sin buscar, con
+     * las jugadas legales, el jaque y el resultado si la partida ha
+     * terminado (y entonces no se busca); luego una por iteración y una
+     * final con finished.
+     */
+    public void analyze(GameState pos, Consumer<Evaluation> onUpdate) {
+        long gen = analysisGen.incrementAndGet();
+        Search running = search;
+        if (running != null) running.stop();
+        GameState snapshot = new GameState(pos);
+        engine.execute(() -> {
+            if (gen != analysisGen.get()) return;
+            long key = snapshot.getKey();
+            int legal = snapshot.countLegalMoves();
+            boolean inCheck = snapshot.isInCheck(snapshot.whiteTurn);
+            int outcome = snapshot.outcome();
+            int sign = snapshot.whiteTurn ? 1 : -1;
+            boolean over = outcome != GameState.ONGOING;
+            publish(analysisGen, gen, () -> onUpdate.accept(
+                    new Evaluation(key, legal, inCheck, outcome, 0, 0, 0, 0, "", over)));
+            if (over) return;
+
+            Search s = search;
+            if (s == null) search = s = new Search(new TranspositionTable(HASH_MB));
+            San san = new San();
+            Search current = s;
+            s.setListener((depth, score, nodes, millis, pv) -> {
+                if (gen != analysisGen.get()) {
+                    current.stop();
+                    return;
+                }
+                String line = line(snapshot, pv, san);
+                publish(analysisGen, gen, () -> onUpdate.accept(
+                        new Evaluation(key, legal, inCheck, outcome, depth, sign * score, nodes, millis, line, false)));
+            });
+            // el stop() de analyze se pierde si llega antes de que arranque la búsqueda
+            Search.Result r = s.search(snapshot, MAX_DEPTH, budgetMs, () -> gen != analysisGen.get());
+            s.setListener(null);
+            String line = line(snapshot, r.pv, san);
+            publish(analysisGen, gen, () -> onUpdate.accept(
+                    new Evaluation(key, legal, inCheck, outcome, r.depth, sign * r.score, r.nodes, r.millis, line, true)));
+        });
+    }
+
+    /** Valida y carga fen fuera del EDT; onResult recibe la posición o el error. */
+    public void loadFen(String fen, BiConsumer<GameState, FenException> onResult) {
+        long gen = fenGen.incrementAndGet();
+        quick.execute(() -> {
+            GameState parsed = new GameState();
+            FenException error = null;
+            try {
+                parsed.loadFEN(fen);
+            } catch (FenException e) {
+                error = e;
+            }
+            FenException err = error;
+            publish(fenGen, gen, () -> onResult.accept(err == null ? parsed : null, err));
+        });
+    }
+
+    /** FEN de cada posición del historial de game, en orden (ver GameHistory.fens). */
+    public void history(GameState game, Consumer<List<String>> onResult) {
+        long gen = historyGen.incrementAndGet();
+        GameHistory snapshot = game.getHistory().copy();
+        quick.execute(() -> {
+            if (gen != historyGen.get()) return;
+            List<String> fens = snapshot.fens();
+            publish(historyGen, gen, () -> onResult.accept(fens));
+        });
+    }
+
+    /** Descarta todo lo pendiente y para la búsqueda en curso. */
+    public void cancel() {
+        movesGen.incrementAndGet();
+        analysisGen.incrementAndGet();
+        fenGen.incrementAndGet();
+        historyGen.incrementAndGet();
+        Search s = search;
+        if (s != null) s.stop();
+    }
+
+    @Override
+    public void close() {
+        cancel();
+        quick.shutdownNow();
+        engine.shutdownNow();
+    }
+
+    // El resultado solo se entrega si su petición sigue siendo la última
+    private static void publish(AtomicLong counter, long gen, Runnable r) {
+        if (gen != counter.get()) return;
+        SwingUtilities.invokeLater(() -> {
+            if (gen == counter.get()) r.run();
+        });
+    }
+
+    // "12. Nf3 Nc6 13. Bb5" desde pos (que queda como estaba)
+    private static String line(GameState pos, int[] pv, San san) {
+        StringBuilder sb = new StringBuilder(64);
+        int n = 0;
+        for (int m : pv) {
+            if (pos.whiteTurn) sb.append(pos.getFullmoveNumber()).append(". ");
+            else if (n == 0) sb.append(pos.getFullmoveNumber()).append("... ");
+            san.append(pos, m, sb);
+            sb.append(' ');
+            pos.makeMove(m);
+            n++;
+        }
+        for (int i = 0; i < n; i++) pos.unmakeMove();
+        return sb.toString().trim();
+    }
+}
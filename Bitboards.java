@@ -0,0 +1,118 @@
+// ==========================================================
+//                 TABLAS DE ATAQUE (BITBOARDS)
+// ==========================================================
+//
+// Casilla = fila * 8 + columna, con la fila 0 arriba (octava fila),
+// igual que GameState.squares. Así a8 = 0, h8 = 7, a1 = 56, h1 = 63.
+
+public final class Bitboards {
+
+    public static final long FILE_A = 0x0101010101010101L;
+    public static final long FILE_H = FILE_A << 7;
+    public static final long RANK_8 = 0xFFL;          // fila 0
+    public static final long RANK_1 = 0xFFL << 56;    // fila 7
+
+    static final long[] KNIGHT = new long[64];
+    static final long[] KING = new long[64];
+
+    // [0] = casillas atacadas por un peón blanco, [1] = por uno negro
+    static final long[][] PAWN_ATTACKS = new long[2][64];
+
+    // Casillas estrictamente entre dos casillas alineadas (0 si no lo están)
+    static final long[][] BETWEEN = new long[64][64];
+    // Línea completa (borde a borde) que pasa por dos casillas alineadas
+    static final long[][] LINE = new long[64][64];
+
+    // Rayos en las 8 direcciones (sin incluir la casilla de origen)
+    private static final long[] RAY_N = new long[64];
+    private static final long[] RAY_S = new long[64];
+    private static final long[] RAY_E = new long[64];
+    private static final long[] RAY_W = new long[64];
+    private static final long[] RAY_NE = new long[64];
+    private static final long[] RAY_NW = new long[64];
+    private static final long[] RAY_SE = new long[64];
+    private static final long[] RAY_SW = new long[64];
+
+    static {
+        int[][] jump = {{2,1},{2,-1},{-2,1},{-2,-1},{1,2},{1,-2},{-1,2},{-1,-2}};
+        int[][] around = {{1,0},{-1,0},{0,1},{0,-1},{1,1},{1,-1},{-1,1},{-1,-1}};
+
+        for (int sq = 0; sq < 64; sq++) {
+            int r = sq >> 3, c = sq & 7;
+
+            for (int[] j : jump) KNIGHT[sq] |= bit(r + j[0], c + j[1]);
+            for (int[] d : around) KING[sq] |= bit(r + d[0], c + d[1]);
+
+            PAWN_ATTACKS[0][sq] = bit(r - 1, c - 1) | bit(r - 1, c + 1);
+            PAWN_ATTACKS[1][sq] = bit(r + 1, c - 1) | bit(r + 1, c + 1);
+
+            RAY_N[sq]  = ray(r, c, -1,  0);
+            RAY_S[sq]  = ray(r, c,  1,  0);
+            RAY_E[sq]  = ray(r, c,  0,  1);
+            RAY_W[sq]  = ray(r, c,  0, -1);
+            RAY_NE[sq] = ray(r, c, -1,  1);
+            RAY_NW[sq] = ray(r, c, -1, -1);
+            RAY_SE[sq] = ray(r, c,  1,  1);
+            RAY_SW[sq] = ray(r, c,  1, -1);
+        }
+
+        for (int sq = 0; sq < 64; sq++) {
+            int r = sq >> 3, c = sq & 7;
+            for (int[] d : around) {
+                long full = ray(r, c, d[0], d[1]) | ray(r, c, -d[0], -d[1]) | (1L << sq);
+                long between = 0;
+                for (int nr = r + d[0], nc = c + d[1]; nr >= 0 && nr < 8 && nc >= 0 && nc < 8; nr += d[0], nc += d[1]) {
+                    int to = nr * 8 + nc;
+                    BETWEEN[sq][to] = between;
+                    LINE[sq][to] = full;
+                    between |= 1L << to;
+                }
+            }
+        }
+    }
+
+    private Bitboards() {}
+
+    private static long bit(int r, int c) {
+        return (r >= 0 && r < 8 && c >= 0 && c < 8) ? 1L << (r * 8 + c) : 0L;
+    }
+
+    private static long ray(int r, int c, int dr, int dc) {
+        long out = 0;
+        for (int nr = r + dr, nc = c + dc; nr >= 0 && nr < 8 && nc >= 0 && nc < 8; nr += dr, nc += dc)
+            out |= 1L << (nr * 8 + nc);
+        return out;
+    }
+
+    // -------------------- PIEZAS DE LARGO ALCANCE ---------------------
+    // Rayo "positivo" (casillas crecientes): el primer bloqueo es el bit más bajo.
+    // Rayo "negativo": el primer bloqueo es el bit más alto.
+
+    private static long positive(long[] rays, int sq, long occ) {
+        long ray = rays[sq];
+        long blockers = ray & occ;
+        if (blockers != 0) ray ^= rays[Long.numberOfTrailingZeros(blockers)];
+        return ray;
+    }
+
+    private static long negative(long[] rays, int sq, long occ) {
+        long ray = rays[sq];
+        long blockers = ray & occ;
+        if (blockers != 0) ray ^= rays[63 - Long.numberOfLeadingZeros(blockers)];
+        return ray;
+    }
+
+    public static long rookAttacks(int sq, long occ) {
+        return positive(RAY_S, sq, occ) | positive(RAY_E, sq, occ)
+                | negative(RAY_N, sq, occ) | negative(RAY_W, sq, occ);
+    }
+
+    public static long bishopAttacks(int sq, long occ) {
+        return positive(RAY_SE, sq, occ) | positive(RAY_SW, sq, occ)
+                | negative(RAY_NE, sq, occ) | negative(RAY_NW, sq, occ);
+    }
+
+    public static long queenAttacks(int sq, long occ) {
+        return rookAttacks(sq, occ) | bishopAttacks(sq, occ);
+    }
+}
@@ -0,0 +1,125 @@
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.List;
+import java.util.SplittableRandom;
+
+// ==========================================================
+//        BENCHMARK DE DIBUJO (MUCHOS TABLEROS A LA VEZ)
+// ==========================================================
+//
+// Simula un muro de análisis: N tableros en los que, en cada fotograma,
+// se juega una jugada aleatoria y se selecciona una pieza. Cada tablero
+// se pinta en una imagen fuera de pantalla de tres formas:
+//
+//   texto    el dibujo anterior (Font nuevo y drawString por casilla,
+//            destinos buscados en una lista)
+//   completo ChessBoardPanel.render con todo el tablero
+//   sucio    render solo de las casillas cambiadas
+//
+// Sin ventana (java.awt.headless), así que funciona en un servidor.
+//
+//   java BoardRenderBenchmark [tableros] [píxeles por lado] [segundos por modo]
+
+public class BoardRenderBenchmark {
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        int boards = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        int pixels = args.length > 1 ? Integer.parseInt(args[1]) : 480;
+        double seconds = args.length > 2 ? Double.parseDouble(args[2]) : 3;
+
+        System.out.printf("%d tableros de %dx%d px%n", boards, pixels, pixels);
+        System.out.printf("%-9s %12s %14s%n", "modo", "fps (muro)", "tableros/s");
+        for (int mode = 0; mode < 3; mode++) {
+            run(mode, boards, pixels, seconds / 3);                  // calentamiento
+            double fps = run(mode, boards, pixels, seconds);
+            System.out.printf("%-9s %12.1f %14.0f%n", new String[]{"texto", "completo", "sucio"}[mode], fps, fps * boards);
+        }
+    }
+
+    // Fotogramas por segundo del muro completo en el modo indicado
+    private static double run(int mode, int boards, int pixels, double seconds) {
+        SplittableRandom rnd = new SplittableRandom(7);
+        GameState[] games = new GameState[boards];
+        ChessBoardPanel[] panels = new ChessBoardPanel[boards];
+        BufferedImage[] screens = new BufferedImage[boards];
+        for (int i = 0; i < boards; i++) {
+            games[i] = new GameState();
+            panels[i] = new ChessBoardPanel(games[i]);
+            panels[i].setSize(pixels, pixels);
+            screens[i] = new BufferedImage(pixels, pixels, BufferedImage.TYPE_INT_RGB);
+            Graphics2D g = screens[i].createGraphics();
+            panels[i].render(g, new Rectangle(0, 0, pixels, pixels));
+            g.dispose();
+        }
+        int[] moves = new int[GameState.MAX_MOVES];
+        int size = pixels / 8;
+        Rectangle dirty = new Rectangle();
+
+        long frames = 0;
+        long t0 = System.nanoTime(), end = t0 + (long) (seconds * 1e9);
+        while (System.nanoTime() < end) {
+            for (int i = 0; i < boards; i++) {
+                GameState game = games[i];
+                int n = game.generateMoves(moves, 0);
+                if (n == 0 || game.getPly() >= 200) {
+                    game.resetBoard();
+                    n = game.generateMoves(moves, 0);
+                }
+                game.makeMove(moves[rnd.nextInt(n)]);
+                n = game.generateMoves(moves, 0);
+                int from = n > 0 ? Move.from(moves[rnd.nextInt(n)]) : game.getKingSquare(game.isWhiteTurn());
+                panels[i].select(from >> 3, from & 7, game.legalTargets(from));
+
+                Graphics2D g = screens[i].createGraphics();
+                if (mode == 0) {
+                    paintText(g, game, game.getLegalMoves(from >> 3, from & 7), size);
+                } else if (mode == 1) {
+                    panels[i].render(g, new Rectangle(0, 0, pixels, pixels));
+                } else {
+                    // cada casilla cambiada por separado: la jugada y el resaltado suelen estar lejos
+                    for (long b = panels[i].changedSquares(); b != 0; b &= b - 1) {
+                        int sq = Long.numberOfTrailingZeros(b);
+                        dirty.setBounds((sq & 7) * size, (sq >> 3) * size, size, size);
+                        panels[i].render(g, dirty);
+                    }
+                }
+                g.dispose();
+            }
+            frames++;
+        }
+        return frames / ((System.nanoTime() - t0) / 1e9);
+    }
+
+    // El paintComponent de antes, tal cual, como referencia
+    private static void paintText(Graphics2D g, GameState game, List<int[]> legalMoves, int size) {
+        for (int r = 0; r < 8; r++) {
+            for (int c = 0; c < 8; c++) {
+                boolean light = (r + c) % 2 == 0;
+                g.setColor(light ? new Color(240, 217, 181) : new Color(181, 136, 99));
+                g.fillRect(c * size, r * size, size, size);
+
+                boolean legal = false;
+                for (int[] m : legalMoves) if (m[0] == r && m[1] == c) legal = true;
+                if (legal) {
+                    g.setColor(new Color(0, 255, 0, 120));
+                    g.fillRect(c * size, r * size, size, size);
+                }
+
+                String piece = game.glyphAt(r, c);
+                if (!piece.isEmpty()) {
+                    g.setColor(Color.BLACK);
+                    g.setFont(new Font("Serif", Font.PLAIN, size - 10));
+                    FontMetrics fm = g.getFontMetrics();
+                    int w = fm.stringWidth(piece);
+                    int h = fm.getAscent();
+                    g.drawString(piece, c * size + (size - w) / 2, r * size + (size + h) / 2);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,29 @@
+import java.nio.ByteBuffer;
+
+// Vista de un ByteBuffer ASCII como CharSequence, para reutilizar los
+// analizadores de texto (FenParser, San) sobre archivos proyectados.
+final class ByteChars implements CharSequence {
+    ByteBuffer buf;
+
+    @Override
+    public int length() {
+        return buf.limit();
+    }
+
+    @Override
+    public char charAt(int index) {
+        return (char) (buf.get(index) & 0xFF);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        StringBuilder sb = new StringBuilder(end - start);
+        for (int i = start; i < end; i++) sb.append(charAt(i));
+        return sb;
+    }
+
+    @Override
+    public String toString() {
+        return subSequence(0, length()).toString();
+    }
+}
@@ -1,129 +1,235 @@
-import javax.swing.*;
-import java.awt.*;
-import java.util.List;
-
-public class ChessBoardPanel extends JPanel {
-
-    private final GameState game;
-    private int selectedRow = -1, selectedCol = -1;
-    private List<int[]> legalMoves = List.of();
-
-    public ChessBoardPanel(GameState g) {
-        this.game = g;
-
-        addMouseListener(new java.awt.event.MouseAdapter() {
-            @Override
-            public void mousePressed(java.awt.event.MouseEvent e) {
-                int size = getWidth() / 8;
-                int col = e.getX() / size;
-                int row = e.getY() / size;
-
-                // ------------------------------
-                //  INTENTAR SELECCIONAR UNA PIEZA
-                // ------------------------------
-                if (selectedRow == -1) {
-
-                    String p = game.board[row][col];
-
-                    // No hay pieza
-                    if (p.isEmpty()) return;
-
-                    // PIEZA NO CORRESPONDE AL TURNO
-                    if (game.whiteTurn && game.isBlack(p)) {
-                        JOptionPane.showMessageDialog(SwingUtilities.getWindowAncestor(ChessBoardPanel.this),
-                                "Es turno de BLANCAS.",
-                                "Turno incorrecto", JOptionPane.INFORMATION_MESSAGE);
-                        return;
-                    }
-                    if (!game.whiteTurn && game.isWhite(p)) {
-                        JOptionPane.showMessageDialog(SwingUtilities.getWindowAncestor(ChessBoardPanel.this),
-                                "Es turno de NEGRAS.",
-                                "Turno incorrecto", JOptionPane.INFORMATION_MESSAGE);
-                        return;
-                    }
-
-                    // SI ESTÁS EN JAQUE
-                    if (game.isInCheck(game.whiteTurn)) {
-                        JOptionPane.showMessageDialog(ChessBoardPanel.this,
-                                "Estás en JAQUE.",
-                                "Jaque", JOptionPane.WARNING_MESSAGE);
-                    }
-
-                    // SELECCIONAR
-                    selectedRow = row;
-                    selectedCol = col;
-                    legalMoves = game.getLegalMoves(row, col);
-                    repaint();
-                }
-
-                // ------------------------------
-                //  INTENTAR MOVER UNA PIEZA
-                // ------------------------------
-                else {
-                    if (isLegal(row, col)) {
-
-                        // ¿SE COMERÁ AL REY?
-                        String destino = game.board[row][col];
-                        if (destino.equals("♔") || destino.equals("♚")) {
-                            String ganador = game.whiteTurn ? "Blancas" : "Negras";
-                            JOptionPane.showMessageDialog(SwingUtilities.getWindowAncestor(ChessBoardPanel.this),
-                                    "¡Jaque Mate a favor de " + ganador + "!",
-                                    "JAQUE MATE", JOptionPane.INFORMATION_MESSAGE);
-                        }
-
-                        // MOVER
-                        game.board[row][col] = game.board[selectedRow][selectedCol];
-                        game.board[selectedRow][selectedCol] = "";
-
-                        // CAMBIAR TURNO
-                        game.whiteTurn = !game.whiteTurn;
-                        game.history.add(game.generateFEN());
-                    }
-
-                    selectedRow = -1;
-                    selectedCol = -1;
-                    legalMoves = List.of();
-                    repaint();
-                }
-            }
-
-        });
-    }
-
-    private boolean isLegal(int r,int c){
-        for(int[] m : legalMoves)
-            if(m[0]==r && m[1]==c) return true;
-        return false;
-    }
-
-    @Override
-    protected void paintComponent(Graphics g){
-        super.paintComponent(g);
-
-        int size = getWidth()/8;
-
-        for(int r=0;r<8;r++){
-            for(int c=0;c<8;c++){
-
-                boolean light = (r+c)%2==0;
-                g.setColor(light?new Color(240,217,181):new Color(181,136,99));
-                g.fillRect(c*size, r*size, size, size);
-
-                if(isLegal(r,c)){
-                    g.setColor(new Color(0,255,0,120));
-                    g.fillRect(c*size, r*size, size, size);
-                }
-
-                String piece = game.board[r][c];
-                if(!piece.isEmpty()){
-                    g.setColor(Color.BLACK);
-                    g.setFont(new Font("Serif", Font.PLAIN, size-10));
-                    FontMetrics fm = g.getFontMetrics();
-                    int w=fm.stringWidth(piece);
-                    int h=fm.getAscent();
-                    g.drawString(piece, c*size+(size-w)/2, r*size+(size+h)/2);
-                }
-            }
-        }
-    }
-}
\ No newline at end of file
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+public class ChessBoardPanel extends JPanel {
+
+    private final GameState game;
+    // Generación de jugadas, jaque y evaluación, fuera del hilo de eventos
+    private final AnalysisService analysis;
+    private java.util.function.Consumer<AnalysisService.Evaluation> evaluationListener;
+
+    private int selectedRow = -1, selectedCol = -1;
+    // Jugadas legales y destinos (bit = casilla) de la pieza seleccionada
+    private int[] selectedMoves = new int[0];
+    private long legalTargets;
+
+    // Lo que hay pintado en pantalla: pieza por casilla (-2 = nada aún),
+    // destinos resaltados y tamaño de casilla. refresh() lo compara con
+    // la posición y solo repinta las casillas que han cambiado.
+    private final int[] shownPiece = new int[64];
+    private long shownTargets;
+    private int shownSize = -1;
+
+    public ChessBoardPanel(GameState g) {
+        this(g, new AnalysisService());
+    }
+
+    public ChessBoardPanel(GameState g, AnalysisService analysis) {
+        this.game = g;
+        this.analysis = analysis;
+        java.util.Arrays.fill(shownPiece, -2);
+
+        addMouseListener(new java.awt.event.MouseAdapter() {
+            @Override
+            public void mousePressed(java.awt.event.MouseEvent e) {
+                int size = getWidth() / 8;
+                int col = e.getX() / size;
+                int row = e.getY() / size;
+
+                // ------------------------------
+                //  INTENTAR SELECCIONAR UNA PIEZA
+                // ------------------------------
+                if (selectedRow == -1) {
+
+                    int p = game.pieceAt(row, col);
+
+                    // No hay pieza
+                    if (p == GameState.EMPTY) return;
+
+                    // PIEZA NO CORRESPONDE AL TURNO
+                    if (game.isWhiteTurn() && p >= GameState.BP) {
+                        JOptionPane.showMessageDialog(SwingUtilities.getWindowAncestor(ChessBoardPanel.this),
+                                "Es turno de BLANCAS.",
+                                "Turno incorrecto", JOptionPane.INFORMATION_MESSAGE);
+                        return;
+                    }
+                    if (!game.isWhiteTurn() && p < GameState.BP) {
+                        JOptionPane.showMessageDialog(SwingUtilities.getWindowAncestor(ChessBoardPanel.this),
+                                "Es turno de NEGRAS.",
+                                "Turno incorrecto", JOptionPane.INFORMATION_MESSAGE);
+                        return;
+                    }
+
+                    // SELECCIONAR: los destinos y el jaque llegan del servicio;
+                    // si antes hay otro clic, la respuesta se descarta
+                    selectedRow = row;
+                    selectedCol = col;
+                    selectedMoves = new int[0];
+                    int sq = row * 8 + col;
+                    analysis.moves(game, sq, m -> {
+                        if (m.key != game.getKey() || selectedRow * 8 + selectedCol != sq) return;
+                        selectedMoves = m.moves;
+                        select(row, col, m.targets);
+
+                        // SI ESTÁS EN JAQUE
+                        if (m.inCheck) {
+                            JOptionPane.showMessageDialog(ChessBoardPanel.this,
+                                    "Estás en JAQUE.",
+                                    "Jaque", JOptionPane.WARNING_MESSAGE);
+                        }
+                    });
+                }
+
+                // ------------------------------
+                //  INTENTAR MOVER UNA PIEZA
+                // ------------------------------
+                else {
+                    boolean moved = false;
+                    if (isLegal(row, col)) {
+
+                        int to = row * 8 + col;
+
+                        // ¿CORONACIÓN?
+                        int promo = 0;
+                        int piece = game.pieceAt(selectedRow, selectedCol);
+                        if ((piece == GameState.WP || piece == GameState.BP) && (row == 0 || row == 7)) {
+                            String[] options = {"Dama", "Torre", "Alfil", "Caballo"};
+                            int[] types = {GameState.WQ, GameState.WR, GameState.WB, GameState.WN};
+                            int choice = JOptionPane.showOptionDialog(
+                                    SwingUtilities.getWindowAncestor(ChessBoardPanel.this),
+                                    "¿A qué pieza coronas?", "Coronación",
+                                    JOptionPane.DEFAULT_OPTION, JOptionPane.QUESTION_MESSAGE,
+                                    null, options, options[0]);
+                            promo = types[Math.max(choice, 0)];
+                        }
+
+                        // MOVER (incluye enroque, al paso y coronación) Y CAMBIAR TURNO
+                        int move = Move.NONE;
+                        for (int m : selectedMoves) {
+                            if (Move.to(m) == to && (Move.promotion(m) == 0 || Move.promotion(m) == promo)) move = m;
+                        }
+                        if (move != Move.NONE) {
+                            game.play(move);
+                            moved = true;
+                        }
+                    }
+
+                    // ¿FIN DE LA PARTIDA? lo dice el análisis de la posición nueva
+                    if (moved) clearSelection();
+                    else deselect();
+                }
+            }
+
+        });
+    }
+
+    /** Olvida la pieza seleccionada y analiza la posición (que puede haber cambiado desde fuera). */
+    public void clearSelection() {
+        deselect();
+        analysis.analyze(game, this::evaluation);
+    }
+
+    private void deselect() {
+        selectedRow = -1;
+        selectedCol = -1;
+        selectedMoves = new int[0];
+        legalTargets = 0L;
+        refresh();
+    }
+
+    /** Recibe, en el EDT, cada actualización del análisis de la posición mostrada. */
+    public void setEvaluationListener(java.util.function.Consumer<AnalysisService.Evaluation> listener) {
+        evaluationListener = listener;
+    }
+
+    private void evaluation(AnalysisService.Evaluation ev) {
+        if (ev.key != game.getKey()) return;
+        if (evaluationListener != null) evaluationListener.accept(ev);
+        if (ev.depth != 0 || ev.outcome == GameState.ONGOING) return;
+        if (ev.outcome == GameState.CHECKMATE) {
+            String ganador = game.isWhiteTurn() ? "Negras" : "Blancas";
+            JOptionPane.showMessageDialog(SwingUtilities.getWindowAncestor(this),
+                    "¡Jaque Mate a favor de " + ganador + "!",
+                    "JAQUE MATE", JOptionPane.INFORMATION_MESSAGE);
+        } else {
+            JOptionPane.showMessageDialog(SwingUtilities.getWindowAncestor(this),
+                    GameState.describeOutcome(ev.outcome) + ": la partida termina en tablas.",
+                    "TABLAS", JOptionPane.INFORMATION_MESSAGE);
+        }
+    }
+
+    /** Selecciona la pieza de (row, col) y resalta los destinos targets. */
+    void select(int row, int col, long targets) {
+        selectedRow = row;
+        selectedCol = col;
+        legalTargets = targets;
+        refresh();
+    }
+
+    private boolean isLegal(int r, int c) {
+        return (legalTargets >>> (r * 8 + c) & 1) != 0;
+    }
+
+    // ==========================================================
+    //                         DIBUJO
+    // ==========================================================
+
+    /** Repinta solo las casillas que difieren de lo que hay en pantalla. */
+    public void refresh() {
+        int size = getWidth() / 8;
+        if (size != shownSize) {
+            repaint();
+            return;
+        }
+        // repaint() uniría las casillas en un rectángulo que abarca la jugada y
+        // los destinos; desde el EDT se pintan ya, una a una
+        boolean now = isShowing() && SwingUtilities.isEventDispatchThread();
+        for (long b = changedSquares(); b != 0; b &= b - 1) {
+            int sq = Long.numberOfTrailingZeros(b);
+            if (now) paintImmediately((sq & 7) * size, (sq >> 3) * size, size, size);
+            else repaint((sq & 7) * size, (sq >> 3) * size, size, size);
+        }
+    }
+
+    /** Casillas cuya pieza o resaltado no coincide con lo pintado. */
+    long changedSquares() {
+        long changed = shownTargets ^ legalTargets;
+        for (int sq = 0; sq < 64; sq++) {
+            if (shownPiece[sq] != game.pieceAt(sq >> 3, sq & 7)) changed |= 1L << sq;
+        }
+        return changed;
+    }
+
+    @Override
+    protected void paintComponent(Graphics g){
+        super.paintComponent(g);
+        Rectangle clip = g.getClipBounds();
+        render(g, clip != null ? clip : new Rectangle(0, 0, getWidth(), getHeight()));
+    }
+
+    // Pinta las casillas que tocan clip copiando las imágenes de GlyphCache
+    void render(Graphics g, Rectangle clip) {
+        int size = getWidth() / 8;
+        if (size <= 0) return;
+        BufferedImage[] tiles = GlyphCache.tiles(size);
+        int c0 = Math.max(0, clip.x / size), c1 = Math.min(7, (clip.x + clip.width - 1) / size);
+        int r0 = Math.max(0, clip.y / size), r1 = Math.min(7, (clip.y + clip.height - 1) / size);
+        if (size != shownSize) {
+            java.util.Arrays.fill(shownPiece, -2);
+            shownSize = size;
+        }
+
+        for (int r = r0; r <= r1; r++) {
+            for (int c = c0; c <= c1; c++) {
+                int sq = r * 8 + c;
+                long bit = 1L << sq;
+                int piece = game.pieceAt(r, c);
+                boolean target = (legalTargets & bit) != 0;
+                g.drawImage(tiles[GlyphCache.index(piece, ((r + c) & 1) != 0, target)], c * size, r * size, null);
+                shownPiece[sq] = piece;
+                shownTargets = (shownTargets & ~bit) | (legalTargets & bit);
+            }
+        }
+    }
+}
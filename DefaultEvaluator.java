@@ -0,0 +1,196 @@
+// ==========================================================
+//                 EVALUACIÓN POR DEFECTO
+// ==========================================================
+//
+// Suma de términos de medio juego (mg) y de final (eg), mezclados según
+// la fase de juego que mantiene GameState:
+//
+//   material + pieza-casilla   incremental en GameState, coste cero aquí
+//   estructura de peones       doblados, aislados y pasados; depende solo
+//                              de los peones, así que se guarda en una
+//                              caché indexada por la clave de peones
+//   movilidad                  casillas atacadas por N, B, R y Q fuera de
+//                              las propias piezas y de los peones rivales
+//   seguridad del rey (mg)     escudo de peones y piezas rivales que
+//                              atacan la zona del rey
+//
+// No asigna memoria por llamada. La caché es de la instancia: no compartir
+// un DefaultEvaluator entre hilos.
+
+public final class DefaultEvaluator implements Evaluator {
+
+    // Movilidad por casilla alcanzable (N, B, R, Q)
+    private static final int[] MOBILITY_MG = {0, 4, 5, 2, 1};
+    private static final int[] MOBILITY_EG = {0, 4, 5, 4, 2};
+
+    // Peones: penalizaciones y bonificación de pasado por fila relativa (1 = fila inicial)
+    private static final int DOUBLED_MG = -10, DOUBLED_EG = -20;
+    private static final int ISOLATED_MG = -10, ISOLATED_EG = -15;
+    private static final int[] PASSED_MG = {0, 5, 10, 15, 25, 40, 60, 0};
+    private static final int[] PASSED_EG = {0, 10, 20, 35, 60, 100, 150, 0};
+
+    // Rey: peones delante de él (fila contigua y la siguiente), peso de cada
+    // atacante de la zona y penalización según la suma de pesos
+    private static final int SHIELD_NEAR = 12, SHIELD_FAR = 6;
+    private static final int[] ATTACK_WEIGHT = {0, 2, 2, 3, 5};
+    private static final int[] KING_DANGER = {
+            0, 0, 5, 10, 18, 28, 40, 55, 72, 90, 110, 130, 150, 170, 190, 210};
+
+    // Columnas vecinas y casillas por delante (columna propia y vecinas), por color
+    private static final long[] ADJACENT_FILES = new long[8];
+    private static final long[][] PASSED_MASK = new long[2][64];
+    private static final long[][] SHIELD_NEAR_MASK = new long[2][64];
+    private static final long[][] SHIELD_FAR_MASK = new long[2][64];
+
+    static {
+        for (int c = 0; c < 8; c++) {
+            if (c > 0) ADJACENT_FILES[c] |= Bitboards.FILE_A << (c - 1);
+            if (c < 7) ADJACENT_FILES[c] |= Bitboards.FILE_A << (c + 1);
+        }
+        for (int sq = 0; sq < 64; sq++) {
+            int r = sq >> 3, c = sq & 7;
+            long files = ADJACENT_FILES[c] | (Bitboards.FILE_A << c);
+            long above = r == 0 ? 0 : -1L >>> (64 - 8 * r);          // filas 0..r-1
+            long below = r == 7 ? 0 : -1L << (8 * (r + 1));          // filas r+1..7
+            PASSED_MASK[0][sq] = files & above;
+            PASSED_MASK[1][sq] = files & below;
+            for (int side = 0; side < 2; side++) {
+                int dr = side == 0 ? -1 : 1;
+                if (r + dr >= 0 && r + dr < 8) SHIELD_NEAR_MASK[side][sq] = files & (0xFFL << (8 * (r + dr)));
+                if (r + 2 * dr >= 0 && r + 2 * dr < 8) SHIELD_FAR_MASK[side][sq] = files & (0xFFL << (8 * (r + 2 * dr)));
+            }
+        }
+    }
+
+    // ==========================================================
+    //                  CACHÉ DE ESTRUCTURA DE PEONES
+    // ==========================================================
+    // Direccionamiento directo, reemplazo siempre. Una posición sin peones
+    // tiene clave 0 y puntuación 0, que es justo lo que contiene una
+    // entrada vacía.
+
+    private static final int PAWN_CACHE_BITS = 14;
+    private final long[] pawnKeys = new long[1 << PAWN_CACHE_BITS];
+    private final int[] pawnMg = new int[1 << PAWN_CACHE_BITS];
+    private final int[] pawnEg = new int[1 << PAWN_CACHE_BITS];
+    private long pawnHits, pawnProbes;
+
+    /** Aciertos y consultas de la caché de peones desde que se creó. */
+    public long pawnHits() { return pawnHits; }
+    public long pawnProbes() { return pawnProbes; }
+
+    @Override
+    public int evaluate(GameState pos) {
+        int mg = pos.mgScore, eg = pos.egScore;
+
+        long pawnKey = pos.pawnKey;
+        int slot = (int) (pawnKey >>> (64 - PAWN_CACHE_BITS));
+        pawnProbes++;
+        if (pawnKeys[slot] == pawnKey) {
+            pawnHits++;
+        } else {
+            pawnStructure(pos, slot);
+            pawnKeys[slot] = pawnKey;
+        }
+        mg += pawnMg[slot];
+        eg += pawnEg[slot];
+
+        long wp = pos.pieces[GameState.WP], bp = pos.pieces[GameState.BP];
+        long wpAtt = ((wp & ~Bitboards.FILE_A) >>> 9) | ((wp & ~Bitboards.FILE_H) >>> 7);
+        long bpAtt = ((bp & ~Bitboards.FILE_A) << 7) | ((bp & ~Bitboards.FILE_H) << 9);
+
+        // movilidad de cada bando y peso de sus ataques a la zona del rey rival
+        mobility(pos, GameState.WP, ~pos.whiteOcc & ~bpAtt, kingZone(pos.kingSquare[1]));
+        mg += mobMg;
+        eg += mobEg;
+        int whiteAttack = attack;
+        mobility(pos, GameState.BP, ~pos.blackOcc & ~wpAtt, kingZone(pos.kingSquare[0]));
+        mg -= mobMg;
+        eg -= mobEg;
+        int blackAttack = attack;
+
+        // seguridad del rey: solo en el medio juego
+        mg += shield(pos.kingSquare[0], wp, 0) - KING_DANGER[blackAttack];
+        mg -= shield(pos.kingSquare[1], bp, 1) - KING_DANGER[whiteAttack];
+
+        int phase = Math.min(pos.phase, PieceSquare.MAX_PHASE);
+        int score = (mg * phase + eg * (PieceSquare.MAX_PHASE - phase)) / PieceSquare.MAX_PHASE;
+        return pos.whiteTurn ? score : -score;
+    }
+
+    // Dobles, aislados y pasados de ambos bandos (blancas - negras) en la entrada slot
+    private void pawnStructure(GameState pos, int slot) {
+        long wp = pos.pieces[GameState.WP], bp = pos.pieces[GameState.BP];
+        int mg = 0, eg = 0;
+        for (int side = 0; side < 2; side++) {
+            long own = side == 0 ? wp : bp, enemy = side == 0 ? bp : wp;
+            int m = 0, e = 0;
+            for (int c = 0; c < 8; c++) {
+                int n = Long.bitCount(own & (Bitboards.FILE_A << c));
+                if (n == 0) continue;
+                if (n > 1) {
+                    m += DOUBLED_MG * (n - 1);
+                    e += DOUBLED_EG * (n - 1);
+                }
+                if ((own & ADJACENT_FILES[c]) == 0) {
+                    m += ISOLATED_MG * n;
+                    e += ISOLATED_EG * n;
+                }
+            }
+            for (long b = own; b != 0; b &= b - 1) {
+                int sq = Long.numberOfTrailingZeros(b);
+                if ((PASSED_MASK[side][sq] & enemy) != 0) continue;
+                int advance = side == 0 ? 7 - (sq >> 3) : sq >> 3;
+                m += PASSED_MG[advance];
+                e += PASSED_EG[advance];
+            }
+            mg += side == 0 ? m : -m;
+            eg += side == 0 ? e : -e;
+        }
+        pawnMg[slot] = mg;
+        pawnEg[slot] = eg;
+    }
+
+    // -------------------- MOVILIDAD Y ATAQUES ---------------------
+    // Resultados de mobility() para el bando recorrido: movilidad de medio
+    // juego y de final, y peso de los ataques a la zona del rey rival
+    // (0 con menos de dos atacantes; índice de KING_DANGER).
+    private int mobMg, mobEg, attack;
+
+    private void mobility(GameState pos, int base, long area, long zone) {
+        long occ = pos.occupied;
+        int mg = 0, eg = 0, attackers = 0, weight = 0;
+        for (int t = 1; t <= 4; t++) {
+            for (long b = pos.pieces[base + t]; b != 0; b &= b - 1) {
+                int sq = Long.numberOfTrailingZeros(b);
+                long att;
+                switch (t) {
+                    case 1: att = Bitboards.KNIGHT[sq]; break;
+                    case 2: att = Bitboards.bishopAttacks(sq, occ); break;
+                    case 3: att = Bitboards.rookAttacks(sq, occ); break;
+                    default: att = Bitboards.queenAttacks(sq, occ); break;
+                }
+                int n = Long.bitCount(att & area);
+                mg += MOBILITY_MG[t] * n;
+                eg += MOBILITY_EG[t] * n;
+                if ((att & zone) != 0) {
+                    attackers++;
+                    weight += ATTACK_WEIGHT[t];
+                }
+            }
+        }
+        mobMg = mg;
+        mobEg = eg;
+        attack = attackers < 2 ? 0 : Math.min(weight, KING_DANGER.length - 1);
+    }
+
+    private static long kingZone(int ksq) {
+        return ksq < 0 ? 0 : Bitboards.KING[ksq] | (1L << ksq);
+    }
+
+    private static int shield(int ksq, long pawns, int side) {
+        if (ksq < 0) return 0;
+        return SHIELD_NEAR * Long.bitCount(SHIELD_NEAR_MASK[side][ksq] & pawns)
+                + SHIELD_FAR * Long.bitCount(SHIELD_FAR_MASK[side][ksq] & pawns);
+    }
+}
@@ -0,0 +1,14 @@
+// ==========================================================
+//                      EVALUACIÓN ESTÁTICA
+// ==========================================================
+//
+// Puntuación de una posición en centipeones desde el punto de vista del
+// bando que mueve (positiva = mejor para quien mueve). Search llama a
+// evaluate en cada hoja de la quietud, así que una implementación debe
+// ser barata y no asignar memoria. Puede tener estado (cachés): cada
+// hilo de búsqueda usa su propia instancia.
+
+public interface Evaluator {
+
+    int evaluate(GameState pos);
+}
@@ -0,0 +1,30 @@
+// ==========================================================
+//                  ERROR DE SINTAXIS EN UNA FEN
+// ==========================================================
+//
+// Lleva la línea (1 en adelante, 0 si la FEN no viene de un archivo) y la
+// columna (1 en adelante) donde se detectó el problema.
+
+public class FenException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long line;
+    private final int column;
+
+    public FenException(String message, long line, int column) {
+        super(line > 0
+                ? message + " (línea " + line + ", columna " + column + ")"
+                : message + " (columna " + column + ")");
+        this.line = line;
+        this.column = column;
+    }
+
+    public long getLine() {
+        return line;
+    }
+
+    public int getColumn() {
+        return column;
+    }
+}
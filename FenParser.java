@@ -1,106 +1,153 @@
-import java.util.HashMap;
-import java.util.Map;
-
-public class FenParser {
-
-    private static final Map<Character, String> unicodePieces = new HashMap<>();
-
-    static {
-        unicodePieces.put('p', "♟"); unicodePieces.put('r', "♜");
-        unicodePieces.put('n', "♞"); unicodePieces.put('b', "♝");
-        unicodePieces.put('q', "♛"); unicodePieces.put('k', "♚");
-
-        unicodePieces.put('P', "♙"); unicodePieces.put('R', "♖");
-        unicodePieces.put('N', "♘"); unicodePieces.put('B', "♗");
-        unicodePieces.put('Q', "♕"); unicodePieces.put('K', "♔");
-    }
-
-    public static String[][] parseBoard(String fen) throws Exception {
-
-        String[] parts = fen.split(" ");
-        if (parts.length < 1)
-            throw new Exception("La cadena FEN está incompleta.");
-
-        String placement = parts[0];
-        String[] ranks = placement.split("/");
-
-        if (ranks.length != 8)
-            throw new Exception("El tablero debe tener 8 filas separadas por '/'.");
-
-        String[][] board = new String[8][8];
-
-        for (int row = 0; row < 8; row++) {
-            String rank = ranks[row];
-            int col = 0;
-
-            for (char c : rank.toCharArray()) {
-
-                if (Character.isDigit(c)) {
-                    int empty = c - '0';
-                    if (empty < 1 || empty > 8)
-                        throw new Exception("Número inválido en una fila: " + c);
-
-                    for (int k = 0; k < empty; k++) {
-                        if (col >= 8)
-                            throw new Exception("Fila con más de 8 columnas.");
-                        board[row][col++] = "";
-                    }
-
-                } else if (unicodePieces.containsKey(c)) {
-                    if (col >= 8)
-                        throw new Exception("Fila con más de 8 columnas.");
-                    board[row][col++] = unicodePieces.get(c);
-
-                } else {
-                    throw new Exception("Símbolo inválido encontrado: " + c);
-                }
-            }
-
-            if (col != 8)
-                throw new Exception("La fila " + (row + 1) + " no completa 8 columnas.");
-        }
-
-        return board;
-    }
-
-    public class GameState {
-
-        public String[][] board = new String[8][8];
-        public boolean whiteTurn = true; // true = blancas, false = negras
-
-        public GameState() {
-            resetBoard();
-        }
-
-        public void resetBoard() {
-            resetBoard(null);
-        }
-
-        public void resetBoard(String fen) {
-            if (fen == null || fen.isBlank()) {
-                // Tablero inicial estándar
-                board = new String[][]{
-                        {"♜","♞","♝","♛","♚","♝","♞","♜"},
-                        {"♟","♟","♟","♟","♟","♟","♟","♟"},
-                        {"","","","","","","",""},
-                        {"","","","","","","",""},
-                        {"","","","","","","",""},
-                        {"","","","","","","",""},
-                        {"♙","♙","♙","♙","♙","♙","♙","♙"},
-                        {"♖","♘","♗","♕","♔","♗","♘","♖"}
-                };
-                whiteTurn = true;
-                return;
-            }
-
-            try {
-                board = parseBoard(fen);
-                whiteTurn = fen.contains(" w "); // turno indicado por FEN
-            } catch (Exception e) {
-                System.out.println("Error al aplicar FEN: " + e.getMessage());
-                resetBoard(); // fallback
-            }
-        }
-
-        }
-}
\ No newline at end of file
+public class FenParser {
+
+    // Mismos códigos de pieza que GameState (P N B R Q K, luego negras)
+    private static final int EMPTY = GameState.EMPTY;
+    private static final String LETTERS = "PNBRQKpnbrqk";
+    private static final String GLYPHS = "♙♘♗♖♕♔♟♞♝♜♛♚";
+
+    // Código de pieza por carácter ASCII
+    private static final int[] PIECE_OF = new int[128];
+
+    static {
+        java.util.Arrays.fill(PIECE_OF, EMPTY);
+        for (int i = 0; i < LETTERS.length(); i++) PIECE_OF[LETTERS.charAt(i)] = i;
+    }
+
+    public static String[][] parseBoard(String fen) throws FenException {
+        if (fen == null) throw new FenException("FEN vacío", 0, 1);
+        int[] parsed = new int[64];
+        parse(fen, 0, fen.length(), 0, parsed, new int[5]);
+
+        String[][] board = new String[8][8];
+        for (int sq = 0; sq < 64; sq++) {
+            board[sq >> 3][sq & 7] = parsed[sq] == EMPTY ? "" : String.valueOf(GLYPHS.charAt(parsed[sq]));
+        }
+        return board;
+    }
+
+    // ==========================================================
+    //                  NÚCLEO SIN ASIGNACIONES
+    // ==========================================================
+
+    /**
+     * Analiza src[start, end) sin crear objetos. Deja en board la pieza de
+     * cada casilla y en fields {turno, enroques, al paso, reloj, jugada}.
+     * Solo la colocación es obligatoria; el resto toma valores por defecto.
+     * line solo se usa para los mensajes de error.
+     */
+    static void parse(CharSequence src, int start, int end, long line, int[] board, int[] fields)
+            throws FenException {
+        int i = start;
+        while (i < end && src.charAt(i) == ' ') i++;
+        if (i >= end) throw new FenException("FEN vacío", line, 1);
+
+        // -------------------- COLOCACIÓN ---------------------
+        int row = 0, col = 0;
+        for (; i < end; i++) {
+            char c = src.charAt(i);
+            if (c == ' ') break;
+            if (c == '/') {
+                if (col != 8) throw error("la fila " + (row + 1) + " no completa 8 columnas", line, start, i);
+                if (++row > 7) throw error("el tablero debe tener 8 filas", line, start, i);
+                col = 0;
+            } else if (c >= '1' && c <= '8') {
+                int empty = c - '0';
+                if (col + empty > 8) throw error("fila con más de 8 columnas", line, start, i);
+                for (int k = 0; k < empty; k++) board[row * 8 + col++] = EMPTY;
+            } else if (c < 128 && PIECE_OF[c] != EMPTY) {
+                if (col >= 8) throw error("fila con más de 8 columnas", line, start, i);
+                board[row * 8 + col++] = PIECE_OF[c];
+            } else {
+                throw error("símbolo inválido '" + c + "'", line, start, i);
+            }
+        }
+        if (row != 7 || col != 8) throw error("el tablero debe tener 8 filas de 8 columnas", line, start, i);
+        int count = 0;
+        for (int sq = 0; sq < 64; sq++) {
+            if (board[sq] != EMPTY) count++;
+        }
+        if (count > 32) throw error("más de 32 piezas en el tablero", line, start, start);
+
+        fields[0] = 1;
+        fields[1] = 0;
+        fields[2] = -1;
+        fields[3] = 0;
+        fields[4] = 1;
+
+        // -------------------- TURNO ---------------------
+        i = skipSpaces(src, i, end);
+        if (i >= end) return;
+        char side = src.charAt(i);
+        if (side != 'w' && side != 'b') throw error("el turno debe ser 'w' o 'b'", line, start, i);
+        fields[0] = side == 'w' ? 1 : 0;
+        i = endOfField(src, i + 1, end, line, start);
+
+        // -------------------- ENROQUES ---------------------
+        i = skipSpaces(src, i, end);
+        if (i >= end) return;
+        if (src.charAt(i) == '-') {
+            i++;
+        } else {
+            for (; i < end && src.charAt(i) != ' '; i++) {
+                int bit = "KQkq".indexOf(src.charAt(i));
+                if (bit < 0) throw error("enroque desconocido '" + src.charAt(i) + "'", line, start, i);
+                fields[1] |= 1 << bit;
+            }
+        }
+        i = endOfField(src, i, end, line, start);
+
+        // -------------------- AL PASO ---------------------
+        i = skipSpaces(src, i, end);
+        if (i >= end) return;
+        if (src.charAt(i) == '-') {
+            i++;
+        } else {
+            char f = src.charAt(i);
+            char r = i + 1 < end ? src.charAt(i + 1) : ' ';
+            if (f < 'a' || f > 'h' || (r != '3' && r != '6'))
+                throw error("casilla al paso inválida", line, start, i);
+            fields[2] = ('8' - r) * 8 + (f - 'a');
+            i += 2;
+        }
+        i = endOfField(src, i, end, line, start);
+
+        // -------------------- RELOJES ---------------------
+        i = skipSpaces(src, i, end);
+        if (i >= end) return;
+        int from = i;
+        fields[3] = 0;
+        for (; i < end && src.charAt(i) != ' '; i++) {
+            char c = src.charAt(i);
+            if (c < '0' || c > '9' || i - from > 5) throw error("reloj de 50 jugadas inválido", line, start, i);
+            fields[3] = fields[3] * 10 + (c - '0');
+        }
+
+        i = skipSpaces(src, i, end);
+        if (i >= end) return;
+        from = i;
+        fields[4] = 0;
+        for (; i < end && src.charAt(i) != ' '; i++) {
+            char c = src.charAt(i);
+            if (c < '0' || c > '9' || i - from > 5) throw error("número de jugada inválido", line, start, i);
+            fields[4] = fields[4] * 10 + (c - '0');
+        }
+        if (fields[4] < 1) throw error("número de jugada inválido", line, start, from);
+
+        i = skipSpaces(src, i, end);
+        if (i < end) throw error("texto sobrante tras la FEN", line, start, i);
+    }
+
+    private static int skipSpaces(CharSequence src, int i, int end) {
+        while (i < end && src.charAt(i) == ' ') i++;
+        return i;
+    }
+
+    private static int endOfField(CharSequence src, int i, int end, long line, int start) throws FenException {
+        if (i < end && src.charAt(i) != ' ') throw error("campo mal formado", line, start, i);
+        return i;
+    }
+
+    private static FenException error(String message, long line, int start, int i) {
+        return new FenException("FEN inválido: " + message, line, i - start + 1);
+    }
+}
@@ -0,0 +1,216 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// ==========================================================
+//             LECTOR DE FEN EN FLUJO (UNA POR LÍNEA)
+// ==========================================================
+//
+// Analiza directamente los bytes de un ByteBuffer o de un archivo
+// proyectado en memoria, sin crear objetos por línea: cada FEN se carga
+// en una misma posición reutilizada que se entrega al consumidor.
+// Las líneas vacías y las que empiezan por '#' se ignoran.
+//
+// En modo paralelo el archivo se corta en trozos por saltos de línea y
+// cada hilo tiene su propio lector; el consumidor debe ser seguro entre
+// hilos y no debe guardar la posición recibida sin copiarla.
+
+public final class FenReader {
+
+    /** Recibe cada posición leída; position se reutiliza en la línea siguiente. */
+    @FunctionalInterface
+    public interface Consumer {
+        void accept(GameState position, long line);
+    }
+
+    // Los trozos proyectados no pasan de 1 GB para que los índices quepan en un int
+    private static final long MAX_CHUNK = 1L << 30;
+
+    private final GameState position = new GameState();
+    private final int[] board = new int[64];
+    private final int[] fields = new int[5];
+    private final ByteChars chars = new ByteChars();
+
+    /**
+     * Lee las FEN de buf entre position() y limit(). firstLine es el número
+     * de la primera línea (para los errores). Devuelve las líneas recorridas.
+     */
+    public long read(ByteBuffer buf, long firstLine, Consumer consumer) throws FenException {
+        chars.buf = buf;
+        int end = buf.limit();
+        long line = firstLine;
+        int i = buf.position();
+
+        while (i < end) {
+            int lineEnd = i;
+            while (lineEnd < end && buf.get(lineEnd) != '\n') lineEnd++;
+            int contentEnd = lineEnd;
+            if (contentEnd > i && buf.get(contentEnd - 1) == '\r') contentEnd--;
+
+            if (contentEnd > i && buf.get(i) != '#') {
+                FenParser.parse(chars, i, contentEnd, line, board, fields);
+                position.setPosition(board, fields);
+                consumer.accept(position, line);
+            }
+            line++;
+            i = lineEnd + 1;
+        }
+        return line - firstLine;
+    }
+
+    // ==========================================================
+    //                  ARCHIVOS PROYECTADOS
+    // ==========================================================
+
+    /** Lee el archivo entero en este hilo. Devuelve las líneas recorridas. */
+    public static long readFile(Path file, Consumer consumer) throws IOException, FenException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            FenReader reader = new FenReader();
+            long line = 1;
+            long[] cuts = split(ch, 1);
+            for (int k = 0; k + 1 < cuts.length; k++) {
+                line += reader.read(map(ch, cuts[k], cuts[k + 1]), line, consumer);
+            }
+            return line - 1;
+        }
+    }
+
+    /**
+     * Lee el archivo con varios hilos. Primero cuenta las líneas de cada trozo
+     * (para que los números de línea sean absolutos) y luego analiza los
+     * trozos en paralelo. Si alguno falla se lanza el primer error.
+     */
+    public static long readFileParallel(Path file, int threads, Consumer consumer)
+            throws IOException, FenException, InterruptedException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            long[] cuts = split(ch, threads * 4);
+            int chunks = cuts.length - 1;
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            try {
+                // 1) saltos de línea por trozo
+                List<Future<Long>> counts = new ArrayList<>();
+                for (int k = 0; k < chunks; k++) {
+                    long from = cuts[k], to = cuts[k + 1];
+                    counts.add(pool.submit(() -> countLines(map(ch, from, to))));
+                }
+                long[] firstLine = new long[chunks];
+                long line = 1;
+                for (int k = 0; k < chunks; k++) {
+                    firstLine[k] = line;
+                    line += get(counts.get(k));
+                }
+
+                // 2) análisis
+                ThreadLocal<FenReader> readers = ThreadLocal.withInitial(FenReader::new);
+                List<Future<Long>> parsed = new ArrayList<>();
+                for (int k = 0; k < chunks; k++) {
+                    long from = cuts[k], to = cuts[k + 1], first = firstLine[k];
+                    parsed.add(pool.submit(() -> readers.get().read(map(ch, from, to), first, consumer)));
+                }
+                long total = 0;
+                for (Future<Long> f : parsed) total += get(f);
+                return total;
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+    }
+
+    // Cortes en inicios de línea: como mínimo `parts` trozos y ninguno mayor que MAX_CHUNK
+    private static long[] split(FileChannel ch, int parts) throws IOException {
+        long size = ch.size();
+        long step = Math.max(1, Math.min(MAX_CHUNK / 2, (size + parts - 1) / Math.max(1, parts)));
+        List<Long> cuts = new ArrayList<>();
+        cuts.add(0L);
+        ByteBuffer probe = ByteBuffer.allocate(4096);
+        long pos = step;
+        while (pos < size) {
+            // avanzar hasta justo después del siguiente '\n'
+            long cut = -1;
+            for (long p = pos; p < size && cut < 0; p += probe.capacity()) {
+                probe.clear();
+                int n = ch.read(probe, p);
+                if (n <= 0) break;
+                for (int j = 0; j < n; j++) {
+                    if (probe.get(j) == '\n') {
+                        cut = p + j + 1;
+                        break;
+                    }
+                }
+            }
+            if (cut < 0 || cut >= size) break;
+            if (cut - cuts.get(cuts.size() - 1) > MAX_CHUNK)
+                throw new IOException("FenReader: línea de más de " + (MAX_CHUNK / 2) + " bytes");
+            cuts.add(cut);
+            pos = cut + step;
+        }
+        cuts.add(size);
+        long[] out = new long[cuts.size()];
+        for (int k = 0; k < out.length; k++) out[k] = cuts.get(k);
+        return out;
+    }
+
+    static MappedByteBuffer map(FileChannel ch, long from, long to) throws IOException {
+        return ch.map(FileChannel.MapMode.READ_ONLY, from, to - from);
+    }
+
+    static long countLines(ByteBuffer buf) {
+        long lines = 0;
+        int end = buf.limit();
+        for (int i = buf.position(); i < end; i++) {
+            if (buf.get(i) == '\n') lines++;
+        }
+        // una última línea sin '\n' también cuenta
+        if (end > buf.position() && buf.get(end - 1) != '\n') lines++;
+        return lines;
+    }
+
+    private static long get(Future<Long> f) throws IOException, FenException, InterruptedException {
+        try {
+            return f.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof FenException) throw (FenException) cause;
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    // ==========================================================
+    //                      LÍNEA DE COMANDOS
+    // ==========================================================
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.out.println("Uso: java FenReader <archivo> [hilos]");
+            return;
+        }
+        Path file = Path.of(args[0]);
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+        java.util.concurrent.atomic.LongAdder positions = new java.util.concurrent.atomic.LongAdder();
+        java.util.concurrent.atomic.LongAdder checks = new java.util.concurrent.atomic.LongAdder();
+
+        Consumer count = (p, l) -> {
+            positions.increment();
+            if (p.isInCheck(p.whiteTurn)) checks.increment();
+        };
+
+        long t0 = System.nanoTime();
+        long lines = threads > 1 ? readFileParallel(file, threads, count) : readFile(file, count);
+        double seconds = (System.nanoTime() - t0) / 1e9;
+
+        System.out.printf("%d líneas, %d posiciones (%d en jaque) en %.2f s: %.0f FEN/s, %.1f MB/s%n",
+                lines, positions.sum(), checks.sum(), seconds, positions.sum() / seconds,
+                java.nio.file.Files.size(file) / seconds / 1e6);
+    }
+}
@@ -0,0 +1,110 @@
+import java.util.ArrayList;
+import java.util.List;
+
+// ==========================================================
+//              HISTORIAL COMPACTO DE UNA PARTIDA
+// ==========================================================
+//
+// En lugar de una FEN completa por jugada se guardan las jugadas como
+// ints empaquetados (Move) y, cada KEYFRAME_INTERVAL jugadas, la posición
+// completa en 4 longs (GameState.pack). Cualquier posición se reconstruye
+// desde el fotograma anterior más cercano rehaciendo como mucho
+// KEYFRAME_INTERVAL - 1 jugadas: unos 5 bytes por jugada en total.
+//
+// Índice i = posición tras i jugadas; 0 es la posición inicial. Solo
+// GameState lo modifica (reset, add y truncate no son públicos).
+
+public final class GameHistory {
+
+    public static final int KEYFRAME_INTERVAL = 32;
+
+    private int[] moves = new int[64];
+    private long[] keyframes = new long[4 * GameState.PACKED_LONGS];
+    private int plies;
+
+    /** Empieza un historial nuevo cuya posición inicial es root. */
+    void reset(GameState root) {
+        plies = 0;
+        root.pack(keyframes, 0);
+    }
+
+    /** Añade move, que llevó a la posición after. */
+    void add(GameState after, int move) {
+        if (plies == moves.length) moves = java.util.Arrays.copyOf(moves, plies * 2);
+        moves[plies++] = move;
+
+        if (plies % KEYFRAME_INTERVAL == 0) {
+            int off = (plies / KEYFRAME_INTERVAL) * GameState.PACKED_LONGS;
+            if (off + GameState.PACKED_LONGS > keyframes.length)
+                keyframes = java.util.Arrays.copyOf(keyframes, keyframes.length * 2);
+            after.pack(keyframes, off);
+        }
+    }
+
+    /** Descarta las jugadas posteriores a la posición index (para abrir una rama). */
+    void truncate(int index) {
+        if (index < 0 || index > plies) throw new IndexOutOfBoundsException("truncate: " + index);
+        plies = index;
+    }
+
+    /** Número de posiciones guardadas (jugadas + 1). */
+    public int size() {
+        return plies + 1;
+    }
+
+    /** Jugada que lleva de la posición index a la index + 1. */
+    public int moveAt(int index) {
+        if (index < 0 || index >= plies) throw new IndexOutOfBoundsException("moveAt: " + index);
+        return moves[index];
+    }
+
+    /** Deja en target la posición index desde el fotograma más cercano. */
+    public void restore(int index, GameState target) {
+        if (index < 0 || index > plies) throw new IndexOutOfBoundsException("restore: " + index);
+        int frame = index / KEYFRAME_INTERVAL;
+        target.unpack(keyframes, frame * GameState.PACKED_LONGS);
+        for (int i = frame * KEYFRAME_INTERVAL; i < index; i++) target.makeMove(moves[i]);
+
+        // las repeticiones miran hasta la última jugada irreversible: si es
+        // anterior al fotograma, se rehace desde el fotograma que la contiene
+        int first = Math.max(0, index - target.getHalfmoveClock());
+        if (first < frame * KEYFRAME_INTERVAL) {
+            frame = first / KEYFRAME_INTERVAL;
+            target.unpack(keyframes, frame * GameState.PACKED_LONGS);
+            for (int i = frame * KEYFRAME_INTERVAL; i < index; i++) target.makeMove(moves[i]);
+        }
+    }
+
+    /** FEN de la posición index; para todas, mejor fens(). */
+    public String fenAt(int index) {
+        GameState scratch = new GameState();
+        restore(index, scratch);
+        return scratch.generateFEN();
+    }
+
+    /** FEN de cada posición, de 0 a size() - 1, rehaciendo la partida una sola vez. */
+    public List<String> fens() {
+        List<String> out = new ArrayList<>(plies + 1);
+        GameState scratch = new GameState();
+        scratch.unpack(keyframes, 0);
+        for (int i = 0; ; i++) {
+            out.add(scratch.generateFEN());
+            if (i == plies) return out;
+            scratch.makeMove(moves[i]);
+        }
+    }
+
+    /** Copia independiente (para leerla desde otro hilo). */
+    GameHistory copy() {
+        GameHistory h = new GameHistory();
+        h.moves = java.util.Arrays.copyOf(moves, Math.max(plies, 1));
+        h.keyframes = keyframes.clone();
+        h.plies = plies;
+        return h;
+    }
+
+    /** Bytes ocupados por jugadas y fotogramas (sin contar cabeceras). */
+    public long memoryBytes() {
+        return 4L * moves.length + 8L * keyframes.length;
+    }
+}
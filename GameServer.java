@@ -0,0 +1,305 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// ==========================================================
+//                 SERVIDOR DE PARTIDAS (SIN VENTANA)
+// ==========================================================
+//
+// Protocolo de texto por TCP, una orden por línea y una respuesta por
+// línea ("ok ..." o "error <motivo>"):
+//
+//   new                 crea una partida en la posición inicial -> ok <id>
+//                       (o "error demasiadas partidas", ver MAX_GAMES)
+//   fen <id> <fen>      carga una posición                       -> ok
+//   move <id> <uci>     juega una jugada legal ("e2e4", "e7e8q") -> ok [resultado]
+//   moves <id>          jugadas legales                          -> ok e2e4 d2d4 ...
+//   result <id>         estado de la partida                     -> ok <resultado>
+//   getfen <id>         posición actual                          -> ok <fen>
+//   close <id>          borra la partida                         -> ok
+//   metrics             métricas en JSON (ver Metrics)            -> ok {...}
+//   quit                cierra la conexión
+//
+// El resultado es ongoing, checkmate, stalemate, repetition, fifty o
+// material; move solo lo añade cuando la jugada termina la partida.
+//
+// Cada partida es un GameState propio y solo la ve la conexión que la
+// creó: para las demás su id es una "partida desconocida", aunque lo
+// adivinen. Así cada partida la toca un único hilo y no hace falta
+// sincronizarla. Las partidas creadas por una conexión se borran cuando
+// se cierra. Cada GameState ocupa unos KB, así que hay un tope de
+// partidas vivas por conexión y otro para todo el servidor.
+//
+// Un hilo por conexión: virtual si la JVM los tiene (Java 21+), y si no
+// un pool de hilos de plataforma que crece bajo demanda.
+//
+//   java GameServer [puerto]
+//   java Main --server [puerto]
+
+public final class GameServer implements AutoCloseable {
+
+    public static final int DEFAULT_PORT = 7070;
+    /** Partidas vivas como mucho, por conexión y en total. */
+    public static final int MAX_GAMES_PER_CONNECTION = 1024;
+    public static final int MAX_GAMES = 1 << 16;
+
+    // Por valor de GameState.outcome()
+    private static final String[] RESULTS = {"ongoing", "checkmate", "stalemate", "repetition", "fifty", "material"};
+
+    private final ServerSocket server;
+    private final ExecutorService connections;
+    private final Thread acceptor;
+    private final ConcurrentHashMap<Long, Game> games = new ConcurrentHashMap<>();
+    private final AtomicLong nextId = new AtomicLong(1);
+    private final AtomicInteger open = new AtomicInteger();
+    private final AtomicInteger live = new AtomicInteger();    // partidas en games
+
+    // Partida y conexión dueña
+    private static final class Game {
+        final GameState state = new GameState();
+        final Connection owner;
+
+        Game(Connection owner) { this.owner = owner; }
+    }
+
+    // Ids de las partidas vivas de una conexión (solo la usa su hilo)
+    private static final class Connection {
+        long[] ids = new long[16];
+        int count;
+
+        void add(long id) {
+            if (count == ids.length) ids = java.util.Arrays.copyOf(ids, count * 2);
+            ids[count++] = id;
+        }
+
+        void remove(long id) {
+            for (int i = 0; i < count; i++) {
+                if (ids[i] == id) {
+                    ids[i] = ids[--count];
+                    return;
+                }
+            }
+        }
+    }
+
+    /** Escucha en la interfaz local; puerto 0 = uno libre (ver port()). */
+    public GameServer(int port) throws IOException {
+        server = new ServerSocket(port, 4096, InetAddress.getLoopbackAddress());
+        connections = newThreadPerTaskExecutor("game-conn");
+        acceptor = new Thread(this::acceptLoop, "game-accept");
+        acceptor.start();
+    }
+
+    public int port() {
+        return server.getLocalPort();
+    }
+
+    /** Partidas vivas y conexiones abiertas. */
+    public int games() { return games.size(); }
+    public int connections() { return open.get(); }
+
+    @Override
+    public void close() throws IOException {
+        server.close();
+        connections.shutdownNow();
+        try {
+            acceptor.join();
+            connections.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void acceptLoop() {
+        while (!server.isClosed()) {
+            try {
+                Socket s = server.accept();
+                s.setTcpNoDelay(true);
+                connections.execute(() -> serve(s));
+            } catch (IOException e) {
+                if (!server.isClosed()) System.err.println("GameServer: " + e.getMessage());
+            }
+        }
+    }
+
+    // ==========================================================
+    //                        CONEXIÓN
+    // ==========================================================
+
+    private void serve(Socket socket) {
+        open.incrementAndGet();
+        if (Metrics.ENABLED) Metrics.SERVER_CONNECTIONS.increment();
+        Connection conn = new Connection();
+        try (socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+             Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.US_ASCII))) {
+            StringBuilder reply = new StringBuilder(256);
+            int[] moves = new int[GameState.MAX_MOVES];
+            String line;
+            while ((line = in.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty()) continue;
+                if (line.equals("quit")) break;
+                reply.setLength(0);
+                long t0 = Metrics.ENABLED ? System.nanoTime() : 0;
+                execute(line, reply, moves, conn);
+                if (Metrics.ENABLED) Metrics.SERVER_COMMAND.record(System.nanoTime() - t0);
+                out.append(reply).append('\n');
+                if (!in.ready()) out.flush();      // las órdenes encadenadas salen juntas
+            }
+        } catch (IOException e) {
+            // conexión cortada por el cliente: nada más que hacer
+        } finally {
+            for (int i = 0; i < conn.count; i++) games.remove(conn.ids[i]);
+            live.addAndGet(-conn.count);
+            open.decrementAndGet();
+        }
+    }
+
+    // Ejecuta una orden de la conexión owner y deja la respuesta en reply
+    private void execute(String line, StringBuilder reply, int[] moves, Connection owner) {
+        int sp = line.indexOf(' ');
+        String cmd = sp < 0 ? line : line.substring(0, sp);
+        if (cmd.equals("new")) {
+            if (owner.count >= MAX_GAMES_PER_CONNECTION) {
+                reply.append("error demasiadas partidas");
+                return;
+            }
+            // se reserva antes de crear: varias conexiones no pasan del tope a la vez
+            if (live.incrementAndGet() > MAX_GAMES) {
+                live.decrementAndGet();
+                reply.append("error demasiadas partidas");
+                return;
+            }
+            long id = nextId.getAndIncrement();
+            games.put(id, new Game(owner));
+            owner.add(id);
+            reply.append("ok ").append(id);
+            return;
+        }
+        if (cmd.equals("metrics")) {
+            reply.append("ok ").append(Metrics.json());
+            return;
+        }
+
+        int sp2 = sp < 0 ? -1 : line.indexOf(' ', sp + 1);
+        long id;
+        try {
+            id = sp < 0 ? 0 : Long.parseLong(sp2 < 0 ? line.substring(sp + 1) : line.substring(sp + 1, sp2));
+        } catch (NumberFormatException e) {
+            id = 0;
+        }
+        Game g = id > 0 ? games.get(id) : null;
+        String arg = sp2 < 0 ? "" : line.substring(sp2 + 1).trim();
+        if (g == null || g.owner != owner) {
+            reply.append(isCommand(cmd) ? "error partida desconocida" : "error orden desconocida");
+            return;
+        }
+
+        GameState game = g.state;
+        switch (cmd) {
+            case "fen":
+                try {
+                    game.loadFEN(arg);
+                    reply.append("ok");
+                } catch (FenException e) {
+                    reply.append("error ").append(e.getMessage());
+                }
+                break;
+            case "move": {
+                int m = game.findUciMove(arg);
+                if (m == Move.NONE) {
+                    reply.append("error jugada ilegal ").append(arg);
+                } else {
+                    game.play(m);
+                    reply.append("ok");
+                    int outcome = game.outcome();
+                    if (outcome != GameState.ONGOING) reply.append(' ').append(RESULTS[outcome]);
+                }
+                break;
+            }
+            case "moves": {
+                int n = game.generateMoves(moves, 0);
+                reply.append("ok");
+                for (int i = 0; i < n; i++) reply.append(' ').append(Move.toUci(moves[i]));
+                break;
+            }
+            case "result":
+                reply.append("ok ").append(RESULTS[game.outcome()]);
+                break;
+            case "getfen":
+                game.appendFEN(reply.append("ok "));
+                break;
+            case "close":
+                games.remove(id);
+                owner.remove(id);
+                live.decrementAndGet();
+                reply.append("ok");
+                break;
+            default:
+                reply.append("error orden desconocida");
+        }
+    }
+
+    private static boolean isCommand(String cmd) {
+        switch (cmd) {
+            case "fen": case "move": case "moves": case "result": case "getfen": case "close": return true;
+            default: return false;
+        }
+    }
+
+    // ==========================================================
+    //                     HILOS POR TAREA
+    // ==========================================================
+
+    /**
+     * Un hilo nuevo por tarea: Executors.newVirtualThreadPerTaskExecutor()
+     * si existe (se busca por reflexión para compilar en Java 17); si no,
+     * un pool de hilos daemon sin límite que reutiliza los libres.
+     */
+    static ExecutorService newThreadPerTaskExecutor(String name) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            AtomicInteger count = new AtomicInteger();
+            return Executors.newCachedThreadPool(r -> {
+                Thread t = new Thread(null, r, name + "-" + count.incrementAndGet(), 256 * 1024);
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    /** true si newThreadPerTaskExecutor usa hilos virtuales. */
+    static boolean virtualThreads() {
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        GameServer s = new GameServer(port);
+        Metrics.register();
+        Metrics.printOnExit();
+        System.out.printf("GameServer en %s:%d (hilos %s)%n", InetAddress.getLoopbackAddress().getHostAddress(),
+                s.port(), virtualThreads() ? "virtuales" : "de plataforma");
+        s.acceptor.join();
+    }
+}
@@ -0,0 +1,132 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+
+// ==========================================================
+//              GENERADOR DE CARGA PARA GameServer
+// ==========================================================
+//
+// Abre N conexiones y en cada una juega partidas aleatorias (moves +
+// move) hasta agotar el tiempo; al acabar una partida (sin jugadas o a
+// las 200 medias jugadas) la cierra y empieza otra. Mide cada "move" de
+// ida y vuelta e informa de jugadas por segundo y latencias p50/p99/máx.
+//
+//   java GameServerLoad [puerto] [conexiones] [segundos] [host]
+//
+// Con puerto 0 arranca un GameServer en el mismo proceso.
+
+public final class GameServerLoad {
+
+    private static final int MAX_PLIES = 200;
+
+    public static void main(String[] args) throws Exception {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : GameServer.DEFAULT_PORT;
+        int conns = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        String host = args.length > 3 ? args[3] : "127.0.0.1";
+
+        GameServer local = port == 0 ? new GameServer(0) : null;
+        if (local != null) port = local.port();
+
+        long[][] latencies = new long[conns][];
+        int[] counts = new int[conns];
+        String[] errors = new String[conns];
+        CountDownLatch ready = new CountDownLatch(conns), go = new CountDownLatch(1), done = new CountDownLatch(conns);
+        ExecutorService pool = GameServer.newThreadPerTaskExecutor("load");
+        long[] deadline = new long[1];
+
+        for (int c = 0; c < conns; c++) {
+            int id = c;
+            int p = port;
+            pool.execute(() -> {
+                long[] lat = new long[1024];
+                int n = 0;
+                try (Socket s = new Socket(host, p);
+                     BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.US_ASCII));
+                     Writer out = new BufferedWriter(new OutputStreamWriter(s.getOutputStream(), StandardCharsets.US_ASCII))) {
+                    s.setTcpNoDelay(true);
+                    SplittableRandom rnd = new SplittableRandom(id);
+                    ready.countDown();
+                    go.await();
+                    String game = call(in, out, "new");
+                    int plies = 0;
+                    while (System.nanoTime() < deadline[0]) {
+                        String[] legal = call(in, out, "moves " + game).split(" ");
+                        if (legal.length == 0 || legal[0].isEmpty() || plies >= MAX_PLIES) {
+                            call(in, out, "close " + game);
+                            game = call(in, out, "new");
+                            plies = 0;
+                            continue;
+                        }
+                        String move = legal[rnd.nextInt(legal.length)];
+                        long t0 = System.nanoTime();
+                        call(in, out, "move " + game + " " + move);
+                        if (n == lat.length) lat = Arrays.copyOf(lat, n * 2);
+                        lat[n++] = System.nanoTime() - t0;
+                        plies++;
+                    }
+                    call(in, out, "close " + game);
+                    out.append("quit\n").flush();
+                } catch (Exception e) {
+                    errors[id] = e.toString();
+                    if (ready.getCount() > 0) ready.countDown();
+                } finally {
+                    latencies[id] = lat;
+                    counts[id] = n;
+                    done.countDown();
+                }
+            });
+        }
+
+        ready.await();
+        long t0 = System.nanoTime();
+        deadline[0] = t0 + seconds * 1_000_000_000L;
+        go.countDown();
+        done.await();
+        double elapsed = (System.nanoTime() - t0) / 1e9;
+        pool.shutdown();
+
+        int total = 0, failed = 0;
+        for (int c = 0; c < conns; c++) {
+            total += counts[c];
+            if (errors[c] != null) {
+                if (failed++ == 0) System.err.println("GameServerLoad: " + errors[c]);
+            }
+        }
+        long[] all = new long[total];
+        int k = 0;
+        for (int c = 0; c < conns; c++) {
+            System.arraycopy(latencies[c], 0, all, k, counts[c]);
+            k += counts[c];
+        }
+        Arrays.sort(all);
+
+        System.out.printf("%d conexiones (%d con error), hilos %s, %.1f s%n", conns, failed,
+                GameServer.virtualThreads() ? "virtuales" : "de plataforma", elapsed);
+        System.out.printf("%d jugadas, %.0f jugadas/s%n", total, total / elapsed);
+        if (total > 0) {
+            System.out.printf("latencia de move: p50 %.1f us, p99 %.1f us, máx %.1f us%n",
+                    all[total / 2] / 1e3, all[(int) Math.min(total - 1, (long) total * 99 / 100)] / 1e3,
+                    all[total - 1] / 1e3);
+        }
+        if (local != null) local.close();
+    }
+
+    // Envía una orden y devuelve lo que sigue a "ok" (o falla con la respuesta de error)
+    private static String call(BufferedReader in, Writer out, String cmd) throws IOException {
+        out.append(cmd).append('\n').flush();
+        String r = in.readLine();
+        if (r == null) throw new IOException("conexión cerrada");
+        if (!r.startsWith("ok")) throw new IOException(cmd + ": " + r);
+        return r.length() > 3 ? r.substring(3) : "";
+    }
+}
@@ -1,331 +1,1036 @@
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Map;
-import java.util.HashMap;
-
-public class GameState {
-
-    public List<String> history = new ArrayList<>();
-    public String[][] board = new String[8][8];
-    public boolean whiteTurn = true;
-
-    private static final Map<String, String> unicodeToType = new HashMap<>();
+import java.util.ArrayList;
+import java.util.List;
+
+public class GameState {
+
+    // Jugadas de la partida con fotogramas periódicos (ver GameHistory)
+    private final GameHistory history = new GameHistory();
+    // Posición del historial que se muestra (0 = inicial, history.size() - 1 = última)
+    private int historyIndex;
+
+    // Turno: true = blancas (público solo a través de isWhiteTurn)
+    boolean whiteTurn = true;
+
+    // Derechos de enroque (bits) y casilla de captura al paso (-1 si no hay)
+    public static final int WHITE_OO = 1, WHITE_OOO = 2, BLACK_OO = 4, BLACK_OOO = 8;
+    int castling;
+    int epSquare = -1;
+
+    // Relojes de la FEN y casillas de los reyes ([0] blanco, [1] negro; -1 si falta)
+    int halfmoveClock;
+    int fullmoveNumber = 1;
+    final int[] kingSquare = {-1, -1};
+
+    // Clave Zobrist de la posición, mantenida de forma incremental
+    long key;
+
+    // Material + pieza-casilla (blancas - negras) en medio juego y final,
+    // fase de juego y clave de los peones; incrementales como la clave
+    int mgScore, egScore, phase;
+    long pawnKey;
+
+    // Pila de deshacer: una jugada, un registro compacto y la clave previa por ply
+    private int[] moveStack = new int[256];
+    private long[] undoStack = new long[256];
+    private long[] keyStack = new long[256];
+    private int ply;
+
+    // Claves de las posiciones anteriores a la copiada con copyFrom (la más
+    // reciente primero), para que las repeticiones no se pierdan al copiar
+    private long[] priorKeys = new long[0];
+    private int priorCount;
+
+    // ==========================================================
+    //            REPRESENTACIÓN INTERNA (BITBOARDS)
+    // ==========================================================
+    // Un long por tipo de pieza y color; casilla = fila * 8 + columna.
+
+    public static final int EMPTY = -1;
+    public static final int WP = 0, WN = 1, WB = 2, WR = 3, WQ = 4, WK = 5;
+    public static final int BP = 6, BN = 7, BB = 8, BR = 9, BQ = 10, BK = 11;
+
+    // Glifo Unicode por código de pieza (mismo orden que las constantes)
+    static final String[] GLYPHS = {
+            "♙","♘","♗","♖","♕","♔",
+            "♟","♞","♝","♜","♛","♚"
+    };
+
+    final long[] pieces = new long[12];
+    long whiteOcc, blackOcc, occupied;
+    final int[] squares = new int[64];   // pieza en cada casilla o EMPTY
+
+    // Letra FEN por código de pieza
+    private static final byte[] FEN_LETTERS = "PNBRQKpnbrqk".getBytes(java.nio.charset.StandardCharsets.US_ASCII);
+    private static final byte[] CASTLE_LETTERS = "KQkq".getBytes(java.nio.charset.StandardCharsets.US_ASCII);
+
+    /** Longitud máxima de una FEN escrita por writeFEN. */
+    public static final int MAX_FEN_LENGTH = 96;
+
+    private final byte[] fenBytes = new byte[MAX_FEN_LENGTH];
+
+    // Llamadas a la API hasta la siguiente muestra de Metrics (ver Metrics.SAMPLE)
+    private int metricCountdown = Metrics.ENABLED ? Metrics.firstGap() : 0;
+
+    private boolean sampleMetric() {
+        if (--metricCountdown > 0) return false;
+        metricCountdown = Metrics.nextGap();
+        return true;
+    }
 
 //POSICION INICIAL DEL TABLERO 
-
-    static {
-        unicodeToType.put("♙","P"); unicodeToType.put("♖","R");
-        unicodeToType.put("♘","N"); unicodeToType.put("♗","B");
-        unicodeToType.put("♕","Q"); unicodeToType.put("♔","K");
-
-        unicodeToType.put("♟","p"); unicodeToType.put("♜","r");
-        unicodeToType.put("♞","n"); unicodeToType.put("♝","b");
-        unicodeToType.put("♛","q"); unicodeToType.put("♚","k");
-    }
-
-    public GameState() {
-        resetBoard();
-        history.clear();
-        history.add(generateFEN());
-    }
-
-    public void resetBoard() {
-        board = new String[][]{
-                {"♜","♞","♝","♛","♚","♝","♞","♜"},
-                {"♟","♟","♟","♟","♟","♟","♟","♟"},
-                {"","","","","","","",""},
-                {"","","","","","","",""},
-                {"","","","","","","",""},
-                {"","","","","","","",""},
-                {"♙","♙","♙","♙","♙","♙","♙","♙"},
-                {"♖","♘","♗","♕","♔","♗","♘","♖"}
-        };
-        whiteTurn = true;
-        history.clear();
-        history.add(generateFEN());
-    }
-
-    public boolean isWhite(String p) { return p.matches("[♙♖♘♗♕♔]"); }
-    public boolean isBlack(String p) { return p.matches("[♟♜♞♝♛♚]"); }
-
-    private boolean isEnemy(int r1,int c1,int r2,int c2){
-        return isWhite(board[r1][c1]) && isBlack(board[r2][c2])
-                || isBlack(board[r1][c1]) && isWhite(board[r2][c2]);
-    }
-
-    private boolean inBounds(int r,int c){
-        return r>=0 && r<8 && c>=0 && c<8;
-    }
-
-    public String generateFEN() {
-        StringBuilder sb = new StringBuilder();
-
- 
-        for (int r = 0; r < 8; r++) {
-            int empty = 0;
-            for (int c = 0; c < 8; c++) {
-                String p = board[r][c];
-                if (p == null || p.isEmpty()) {
-                    empty++;
-                } else {
-                    if (empty > 0) {
-                        sb.append(empty);
-                        empty = 0;
-                    }
-                    String letter = unicodeToType.get(p); // usa el mapa unicodeToType que debes tener
-                    if (letter == null) {
-                       
-                     sb.append("?");
-                        throw new IllegalStateException("generateFEN: pieza desconocida -> '" + p + "' en " + r + "," + c);
-                    }
-                    sb.append(letter);
-                }
-            }
-            if (empty > 0) sb.append(empty);
-            if (r < 7) sb.append('/');
-        }
-
-  
-        sb.append(' ');
-        sb.append(whiteTurn ? 'w' : 'b');
-        sb.append(" - - 0 1");
-
-        return sb.toString();
-    }
-
-    // ==========================================================
-    //                      MOVIMIENTOS LEGALES
-    // ==========================================================
-
-    public List<int[]> getLegalMoves(int r, int c) {
-        return getMoves(r, c, true);
-    }
-
-    private List<int[]> getMoves(int r, int c, boolean respectTurn) {
-        List<int[]> out = new ArrayList<>();
-        String p = board[r][c];
-        if (p == null || p.isEmpty()) return out;
-
-        boolean whitePiece = isWhite(p);
-        if (respectTurn) {
-            if (whiteTurn && !whitePiece) return out;
-            if (!whiteTurn && whitePiece) return out;
-        }
-
-        String type = unicodeToType.get(p);
-        if (type == null) return out;
-        type = type.toUpperCase();
-
-        switch (type) {
-            case "P": addPawnMoves(r, c, out); break;
-            case "N": addKnightMoves(r, c, out); break;
-            case "B": addBishopMoves(r, c, out); break;
-            case "R": addRookMoves(r, c, out); break;
-            case "Q": addQueenMoves(r, c, out); break;
-            case "K": addKingMoves(r, c, out); break;
-        }
-        return out;
-    }
-
-    public void loadFEN(String fen) throws Exception {
-        if (fen == null || fen.isEmpty()) {
-            throw new Exception("FEN vacío");
-        }
-
-        String[] parts = fen.split(" ");
-        if (parts.length < 1) {
-            throw new Exception("FEN inválido");
-        }
-
-        String[] rows = parts[0].split("/");
-        if (rows.length != 8) {
-            throw new Exception("FEN inválido: número de filas incorrecto");
-        }
-
-        // Crear mapa FEN -> símbolo Unicode según color
-        Map<String, String> fenToWhite = new HashMap<>();
-        Map<String, String> fenToBlack = new HashMap<>();
-        for (Map.Entry<String, String> entry : unicodeToType.entrySet()) {
-            String unicode = entry.getKey();
-            String fenLetter = entry.getValue();
-            if (isWhite(unicode)) {
-                fenToWhite.put(fenLetter.toUpperCase(), unicode); // blanco
-            } else {
-                fenToBlack.put(fenLetter.toLowerCase(), unicode); // negro
-            }
-        }
-
-        for (int i = 0; i < 8; i++) {
-            String row = rows[i];
-            int col = 0;
-
-            for (char c : row.toCharArray()) {
-                if (Character.isDigit(c)) {
-                    int empty = Character.getNumericValue(c);
-                    for (int j = 0; j < empty; j++) {
-                        board[i][col] = "";
-                        col++;
-                    }
-                } else {
-                    String key = String.valueOf(c);
-                    String pieceSymbol;
-
-                    if (Character.isUpperCase(c)) {
-                        pieceSymbol = fenToWhite.get(key);
-                    } else {
-                        pieceSymbol = fenToBlack.get(key);
-                    }
-
-                    if (pieceSymbol == null) {
-                        throw new Exception("FEN inválido: pieza desconocida -> " + c);
-                    }
-
-                    board[i][col] = pieceSymbol;
-                    col++;
-                }
-            }
-
-            if (col != 8) {
-                throw new Exception("FEN inválido: número de columnas incorrecto en fila " + (i + 1));
-            }
-        }
-
-        // Turno (w/b)
-        whiteTurn = parts.length > 1 && parts[1].equals("w");
-
-        // Guardar FEN en historial
-        history.add(fen);
-    }
-
-    // -------------------- PAWN ---------------------
-    private void addPawnMoves(int r,int c,List<int[]> m){
-        boolean white = isWhite(board[r][c]);
-        int dir = white ? -1 : 1;
-
-        int nr = r + dir;
-
-        // avance normal
-        if (inBounds(nr,c) && board[nr][c].isEmpty()) {
-            m.add(new int[]{nr,c});
-
-            // avance doble
-            int startRank = white ? 6 : 1;
-            if (r == startRank) {
-                int nr2 = r + dir*2;
-                if (board[nr2][c].isEmpty())
-                    m.add(new int[]{nr2,c});
-            }
-        }
-
-        // capturas
-        int[] dc = {-1,1};
-        for(int d : dc){
-            int nc = c + d;
-            if (inBounds(nr,nc) && !board[nr][nc].isEmpty() && isEnemy(r,c,nr,nc)){
-                m.add(new int[]{nr,nc});
-            }
-        }
-    }
-
-    // -------------------- KNIGHT ---------------------
-    private void addKnightMoves(int r,int c,List<int[]> m){
-        int[][] jump = {{2,1},{2,-1},{-2,1},{-2,-1},{1,2},{1,-2},{-1,2},{-1,-2}};
-        for(int[] j : jump){
-            int nr = r+j[0], nc = c+j[1];
-            if(!inBounds(nr,nc)) continue;
-            if(board[nr][nc].isEmpty() || isEnemy(r,c,nr,nc))
-                m.add(new int[]{nr,nc});
-        }
-    }
-
-    // -------------------- BISHOP ---------------------
-    private void addBishopMoves(int r,int c,List<int[]> m){
-        int[][] dirs = {{1,1},{1,-1},{-1,1},{-1,-1}};
-        for(int[] d:dirs){
-            int nr=r+d[0], nc=c+d[1];
-            while(inBounds(nr,nc)){
-                if(board[nr][nc].isEmpty()){
-                    m.add(new int[]{nr,nc});
-                } else {
-                    if(isEnemy(r,c,nr,nc)) m.add(new int[]{nr,nc});
-                    break;
-                }
-                nr+=d[0]; nc+=d[1];
-            }
-        }
-    }
-
-    // -------------------- ROOK ---------------------
-    private void addRookMoves(int r,int c,List<int[]> m){
-        int[][] dirs = {{1,0},{-1,0},{0,1},{0,-1}};
-        for(int[] d:dirs){
-            int nr=r+d[0], nc=c+d[1];
-            while(inBounds(nr,nc)){
-                if(board[nr][nc].isEmpty()){
-                    m.add(new int[]{nr,nc});
-                } else {
-                    if(isEnemy(r,c,nr,nc)) m.add(new int[]{nr,nc});
-                    break;
-                }
-                nr+=d[0]; nc+=d[1];
-            }
-        }
-    }
-
-    // -------------------- QUEEN ---------------------
-    private void addQueenMoves(int r,int c,List<int[]> m){
-        addRookMoves(r,c,m);
-        addBishopMoves(r,c,m);
-    }
-
-    // -------------------- KING ---------------------
-    private void addKingMoves(int r,int c,List<int[]> m){
-        int[][] dirs = {
-                {1,0},{-1,0},{0,1},{0,-1},
-                {1,1},{1,-1},{-1,1},{-1,-1}
-        };
-        for(int[] d:dirs){
-            int nr=r+d[0], nc=c+d[1];
-            if(!inBounds(nr,nc)) continue;
-            if(board[nr][nc].isEmpty() || isEnemy(r,c,nr,nc))
-                m.add(new int[]{nr,nc});
-        }
-    }
-
-    public boolean isInCheck(boolean whiteKing) {
-        String king = whiteKing ? "♔" : "♚";
-        int kr = -1, kc = -1;
-
-        // encontrar rey
-        for (int r = 0; r < 8; r++) {
-            for (int c = 0; c < 8; c++) {
-                if (board[r][c].equals(king)) {
-                    kr = r; kc = c;
-                    break;
-                }
-            }
-            if (kr != -1) break;
-        }
-
-        if (kr == -1) return false; // rey no existe en tablero
-
-        // recorrer piezas enemigas y ver si atacan la casilla del rey
-        for (int r = 0; r < 8; r++) {
-            for (int c = 0; c < 8; c++) {
-                String p = board[r][c];
-                if (p == null || p.isEmpty()) continue;
-
-                // si p es enemiga respecto al color del rey buscado
-                if (whiteKing && isBlack(p) || (!whiteKing && isWhite(p))) {
-                    // generar movimientos SIN respetar el turno global
-                    List<int[]> moves = getMoves(r, c, false);
-                    for (int[] mv : moves) {
-                        if (mv[0] == kr && mv[1] == kc) return true;
-                    }
-                }
-            }
-        }
-        return false;
-    }
-
-}
+
+    public GameState() {
+        resetBoard();
+    }
+
+    /** Copia de la posición de otro estado (su historial empieza en ella). */
+    public GameState(GameState other) {
+        copyFrom(other);
+        history.reset(this);
+        historyIndex = 0;
+    }
+
+    /** Sobrescribe la posición con la de other, sin asignar memoria. */
+    public void copyFrom(GameState other) {
+        System.arraycopy(other.pieces, 0, pieces, 0, 12);
+        System.arraycopy(other.squares, 0, squares, 0, 64);
+        whiteOcc = other.whiteOcc;
+        blackOcc = other.blackOcc;
+        occupied = other.occupied;
+        whiteTurn = other.whiteTurn;
+        castling = other.castling;
+        epSquare = other.epSquare;
+        halfmoveClock = other.halfmoveClock;
+        fullmoveNumber = other.fullmoveNumber;
+        kingSquare[0] = other.kingSquare[0];
+        kingSquare[1] = other.kingSquare[1];
+        key = other.key;
+        mgScore = other.mgScore;
+        egScore = other.egScore;
+        phase = other.phase;
+        pawnKey = other.pawnKey;
+
+        // solo pueden repetirse las posiciones desde la última jugada irreversible
+        int window = Math.min(other.halfmoveClock, other.ply + other.priorCount);
+        if (window > priorKeys.length) priorKeys = new long[Math.max(window, 128)];
+        for (int d = 1; d <= window; d++) priorKeys[d - 1] = other.keyBack(d);
+        priorCount = window;
+        ply = 0;
+    }
+
+    public void resetBoard() {
+        clearBoard();
+        int[] back = {WR, WN, WB, WQ, WK, WB, WN, WR};
+        for (int c = 0; c < 8; c++) {
+            putPiece(back[c] + 6, c);       // fila 0: negras
+            putPiece(BP, 8 + c);
+            putPiece(WP, 48 + c);
+            putPiece(back[c], 56 + c);      // fila 7: blancas
+        }
+        whiteTurn = true;
+        castling = WHITE_OO | WHITE_OOO | BLACK_OO | BLACK_OOO;
+        epSquare = -1;
+        halfmoveClock = 0;
+        fullmoveNumber = 1;
+        key = computeKey();
+        history.reset(this);
+        historyIndex = 0;
+    }
+
+    /** Historial de la partida (solo lectura: lo mantienen play, loadFEN, etc.). */
+    public GameHistory getHistory() { return history; }
+
+    public boolean isWhiteTurn() { return whiteTurn; }
+
+    public int getCastlingRights() { return castling; }
+
+    /** Casilla de captura al paso (fila * 8 + columna) o -1. */
+    public int getEnPassantSquare() { return epSquare; }
+
+    public int getHalfmoveClock() { return halfmoveClock; }
+    public int getFullmoveNumber() { return fullmoveNumber; }
+
+    /** Casilla del rey del color indicado o -1 si no está en el tablero. */
+    public int getKingSquare(boolean white) { return kingSquare[white ? 0 : 1]; }
+
+    /** Jugadas hechas con makeMove desde la última posición cargada. */
+    public int getPly() { return ply; }
+
+    /** Clave Zobrist de 64 bits de la posición actual. */
+    public long getKey() { return key; }
+
+    /**
+     * Clave de la posición tras i jugadas desde la última posición cargada
+     * (0 <= i <= getPly()); keyAt(getPly()) == getKey().
+     */
+    public long keyAt(int i) {
+        if (i < 0 || i > ply) throw new IndexOutOfBoundsException("keyAt: " + i);
+        return i == ply ? key : keyStack[i];
+    }
+
+    /**
+     * Firma de material: número de piezas de cada código salvo los reyes,
+     * 4 bits por código (WP en los bits 0-3 ... BQ en los 40-43).
+     */
+    public long materialSignature() {
+        long sig = 0;
+        for (int p = WP; p <= BQ; p++) {
+            if (p == WK) continue;
+            sig |= (long) Math.min(15, Long.bitCount(pieces[p])) << (4 * p);
+        }
+        return sig;
+    }
+
+    /** Material y tablas pieza-casilla de medio juego, blancas menos negras (ver PieceSquare). */
+    public int getMgScore() { return mgScore; }
+
+    /** Material y tablas pieza-casilla de final, blancas menos negras. */
+    public int getEgScore() { return egScore; }
+
+    /** Fase de juego: PieceSquare.MAX_PHASE con todas las piezas, 0 sin piezas. */
+    public int getPhase() { return phase; }
+
+    /** Clave Zobrist de los peones solamente (caché de estructura de peones). */
+    public long getPawnKey() { return pawnKey; }
+
+    /** Última jugada hecha con makeMove o Move.NONE. */
+    public int lastMove() { return ply > 0 ? moveStack[ply - 1] : Move.NONE; }
+
+    /** Código de pieza en (r, c) o EMPTY. */
+    public int pieceAt(int r, int c) {
+        return squares[r * 8 + c];
+    }
+
+    /** Glifo Unicode de la pieza en (r, c) o "" si está vacía. */
+    public String glyphAt(int r, int c) {
+        int p = squares[r * 8 + c];
+        return p == EMPTY ? "" : GLYPHS[p];
+    }
+
+    /** Instantánea inmutable de la posición (sin el historial). */
+    public Position position() {
+        long[] p = new long[PACKED_LONGS];
+        pack(p, 0);
+        return new Position(p[0], p[1], p[2], p[3], key);
+    }
+
+    // ==========================================================
+    //              ACTUALIZACIÓN DE LA POSICIÓN
+    // ==========================================================
+
+    void clearBoard() {
+        java.util.Arrays.fill(pieces, 0L);
+        java.util.Arrays.fill(squares, EMPTY);
+        whiteOcc = blackOcc = occupied = 0L;
+        key = 0L;
+        mgScore = egScore = phase = 0;
+        pawnKey = 0L;
+        kingSquare[0] = kingSquare[1] = -1;
+        ply = 0;
+        priorCount = 0;
+    }
+
+    void putPiece(int piece, int sq) {
+        long b = 1L << sq;
+        pieces[piece] |= b;
+        if (piece < 6) whiteOcc |= b; else blackOcc |= b;
+        occupied |= b;
+        key ^= Zobrist.PIECE[piece][sq];
+        mgScore += PieceSquare.MG[piece][sq];
+        egScore += PieceSquare.EG[piece][sq];
+        phase += PieceSquare.PHASE[piece];
+        if (piece == WP || piece == BP) pawnKey ^= Zobrist.PIECE[piece][sq];
+        squares[sq] = piece;
+        if (piece == WK) kingSquare[0] = sq;
+        else if (piece == BK) kingSquare[1] = sq;
+    }
+
+    void removePiece(int sq) {
+        int piece = squares[sq];
+        if (piece == EMPTY) return;
+        long b = ~(1L << sq);
+        pieces[piece] &= b;
+        whiteOcc &= b;
+        blackOcc &= b;
+        occupied &= b;
+        key ^= Zobrist.PIECE[piece][sq];
+        mgScore -= PieceSquare.MG[piece][sq];
+        egScore -= PieceSquare.EG[piece][sq];
+        phase -= PieceSquare.PHASE[piece];
+        if (piece == WP || piece == BP) pawnKey ^= Zobrist.PIECE[piece][sq];
+        squares[sq] = EMPTY;
+    }
+
+    // Mueve la pieza de from a la casilla vacía to
+    private void shiftPiece(int from, int to) {
+        int piece = squares[from];
+        long b = (1L << from) | (1L << to);
+        pieces[piece] ^= b;
+        if (piece < 6) whiteOcc ^= b; else blackOcc ^= b;
+        occupied ^= b;
+        key ^= Zobrist.PIECE[piece][from] ^ Zobrist.PIECE[piece][to];
+        mgScore += PieceSquare.MG[piece][to] - PieceSquare.MG[piece][from];
+        egScore += PieceSquare.EG[piece][to] - PieceSquare.EG[piece][from];
+        if (piece == WP || piece == BP) pawnKey ^= Zobrist.PIECE[piece][from] ^ Zobrist.PIECE[piece][to];
+        squares[from] = EMPTY;
+        squares[to] = piece;
+        if (piece == WK) kingSquare[0] = to;
+        else if (piece == BK) kingSquare[1] = to;
+    }
+
+    // Derechos que se conservan al mover desde/hacia cada casilla
+    static final int[] CASTLE_MASK = new int[64];
+
+    static {
+        java.util.Arrays.fill(CASTLE_MASK, 15);
+        CASTLE_MASK[60] &= ~(WHITE_OO | WHITE_OOO);   // e1
+        CASTLE_MASK[63] &= ~WHITE_OO;                 // h1
+        CASTLE_MASK[56] &= ~WHITE_OOO;                // a1
+        CASTLE_MASK[4]  &= ~(BLACK_OO | BLACK_OOO);   // e8
+        CASTLE_MASK[7]  &= ~BLACK_OO;                 // h8
+        CASTLE_MASK[0]  &= ~BLACK_OOO;                // a8
+    }
+
+    // ==========================================================
+    //                  HACER / DESHACER JUGADAS
+    // ==========================================================
+    //
+    // Registro de deshacer (un long por ply):
+    //   bits  0-3   pieza capturada + 1 (0 = ninguna)
+    //   bits  4-7   derechos de enroque anteriores
+    //   bits  8-14  casilla al paso anterior + 1
+    //   bits 15-34  reloj de 50 jugadas anterior
+
+    /** Aplica una jugada de generateMoves, actualizando todo el estado de forma incremental. */
+    public void makeMove(int move) {
+        int from = Move.from(move), to = Move.to(move);
+        int piece = squares[from];
+        boolean white = piece < 6;
+        int captured;
+
+        if (ply == moveStack.length) growStacks();
+        keyStack[ply] = key;
+        key ^= epKey() ^ Zobrist.CASTLING[castling];
+
+        if (Move.isEnPassant(move)) {
+            int capSq = white ? to + 8 : to - 8;
+            captured = squares[capSq];
+            removePiece(capSq);
+        } else {
+            captured = squares[to];
+            if (captured != EMPTY) removePiece(to);
+            if (Move.isCastle(move)) {
+                // la torre salta al otro lado del rey
+                shiftPiece(to > from ? to + 1 : to - 2, to > from ? to - 1 : to + 1);
+            }
+        }
+
+        moveStack[ply] = move;
+        undoStack[ply++] = (captured + 1) | (castling << 4) | ((epSquare + 1) << 8) | ((long) halfmoveClock << 15);
+
+        int promo = Move.promotion(move);
+        if (promo != 0) {
+            removePiece(from);
+            putPiece(white ? promo : promo + 6, to);
+        } else {
+            shiftPiece(from, to);
+        }
+
+        castling &= CASTLE_MASK[from] & CASTLE_MASK[to];
+        epSquare = (move & Move.DOUBLE_PUSH) != 0 ? (from + to) >> 1 : -1;
+        halfmoveClock = (captured != EMPTY || piece == WP || piece == BP) ? 0 : halfmoveClock + 1;
+        if (!white) fullmoveNumber++;
+        whiteTurn = !whiteTurn;
+        key ^= Zobrist.SIDE ^ Zobrist.CASTLING[castling] ^ epKey();
+    }
+
+    /**
+     * Juega move en la partida: makeMove y lo anota en el historial. Si se
+     * está viendo una posición anterior, las jugadas siguientes se descartan
+     * y la partida continúa por la nueva rama.
+     */
+    public void play(int move) {
+        if (historyIndex < history.size() - 1) history.truncate(historyIndex);
+        makeMove(move);
+        history.add(this, move);
+        historyIndex++;
+    }
+
+    // ==========================================================
+    //                NAVEGACIÓN POR EL HISTORIAL
+    // ==========================================================
+    //
+    // Los saltos cortos se hacen con make/unmake; los largos restauran el
+    // fotograma más cercano, así que ningún salto pasa de unas 32 jugadas.
+
+    /** Posición del historial que se está viendo. */
+    public int getHistoryIndex() { return historyIndex; }
+
+    /** Muestra la posición tras index jugadas (0 <= index < history.size()). */
+    public void gotoPly(int index) {
+        if (index < 0 || index >= history.size()) throw new IndexOutOfBoundsException("gotoPly: " + index);
+        int back = historyIndex - index;
+        if (back > 0 && back <= ply && back < GameHistory.KEYFRAME_INTERVAL) {
+            for (int i = 0; i < back; i++) unmakeMove();
+        } else if (back < 0 && -back < GameHistory.KEYFRAME_INTERVAL) {
+            for (int i = historyIndex; i < index; i++) makeMove(history.moveAt(i));
+        } else if (back != 0) {
+            history.restore(index, this);
+        }
+        historyIndex = index;
+    }
+
+    /** Retrocede una jugada; false si ya está en la posición inicial. */
+    public boolean back() {
+        if (historyIndex == 0) return false;
+        gotoPly(historyIndex - 1);
+        return true;
+    }
+
+    /** Avanza una jugada; false si ya está en la última. */
+    public boolean forward() {
+        if (historyIndex == history.size() - 1) return false;
+        gotoPly(historyIndex + 1);
+        return true;
+    }
+
+    /** Deshace la última jugada hecha con makeMove. */
+    public void unmakeMove() {
+        int move = moveStack[--ply];
+        long undo = undoStack[ply];
+        int from = Move.from(move), to = Move.to(move);
+
+        whiteTurn = !whiteTurn;
+        boolean white = whiteTurn;
+        if (!white) fullmoveNumber--;
+
+        if (Move.isPromotion(move)) {
+            removePiece(to);
+            putPiece(white ? WP : BP, from);
+        } else {
+            shiftPiece(to, from);
+        }
+
+        int captured = (int) (undo & 15) - 1;
+        if (captured != EMPTY) {
+            putPiece(captured, Move.isEnPassant(move) ? (white ? to + 8 : to - 8) : to);
+        } else if (Move.isCastle(move)) {
+            shiftPiece(to > from ? to - 1 : to + 1, to > from ? to + 1 : to - 2);
+        }
+
+        castling = (int) (undo >>> 4) & 15;
+        epSquare = (int) ((undo >>> 8) & 127) - 1;
+        halfmoveClock = (int) (undo >>> 15) & 0xFFFFF;
+        key = keyStack[ply];
+    }
+
+    private void growStacks() {
+        moveStack = java.util.Arrays.copyOf(moveStack, moveStack.length * 2);
+        undoStack = java.util.Arrays.copyOf(undoStack, undoStack.length * 2);
+        keyStack = java.util.Arrays.copyOf(keyStack, keyStack.length * 2);
+    }
+
+    // La columna al paso solo entra en la clave si el bando que mueve tiene
+    // un peón que pueda capturar; así dos posiciones idénticas a efectos
+    // de juego comparten clave aunque una venga de un avance doble.
+    private long epKey() {
+        if (epSquare < 0) return 0L;
+        long pawns = pieces[whiteTurn ? WP : BP];
+        return (Bitboards.PAWN_ATTACKS[whiteTurn ? 1 : 0][epSquare] & pawns) != 0 ? Zobrist.EP_FILE[epSquare & 7] : 0L;
+    }
+
+    /** Clave Zobrist calculada desde cero (al cargar una posición). */
+    long computeKey() {
+        long k = 0;
+        for (int p = 0; p < 12; p++) {
+            for (long b = pieces[p]; b != 0; b &= b - 1) k ^= Zobrist.PIECE[p][Long.numberOfTrailingZeros(b)];
+        }
+        k ^= Zobrist.CASTLING[castling] ^ epKey();
+        if (!whiteTurn) k ^= Zobrist.SIDE;
+        return k;
+    }
+
+    /**
+     * Busca la jugada legal from -> to (con la promoción indicada, o dama
+     * por defecto). Devuelve Move.NONE si no es legal.
+     */
+    public int findMove(int from, int to, int promotion) {
+        int n = generateMoves(scratch, 0);
+        for (int i = 0; i < n; i++) {
+            int m = scratch[i];
+            if (Move.from(m) != from || Move.to(m) != to) continue;
+            int promo = Move.promotion(m);
+            if (promo == 0 || promo == (promotion == 0 ? WQ : promotion)) return m;
+        }
+        return Move.NONE;
+    }
+
+    /** Jugada legal en notación UCI ("e2e4", "e7e8q") o Move.NONE si no lo es. */
+    public int findUciMove(CharSequence uci) {
+        int len = uci.length();
+        if (len != 4 && len != 5) return Move.NONE;
+        int from = uciSquare(uci, 0), to = uciSquare(uci, 2);
+        if (from < 0 || to < 0) return Move.NONE;
+        int promo = len == 5 ? "nbrq".indexOf(Character.toLowerCase(uci.charAt(4))) + 1 : 0;
+        if (len == 5 && promo == 0) return Move.NONE;
+        int m = findMove(from, to, promo);
+        return Move.isPromotion(m) != (len == 5) ? Move.NONE : m;
+    }
+
+    private static int uciSquare(CharSequence s, int i) {
+        int c = s.charAt(i) - 'a', r = '8' - s.charAt(i + 1);
+        return c < 0 || c > 7 || r < 0 || r > 7 ? -1 : r * 8 + c;
+    }
+
+    /** Número de jugadas legales del bando que mueve. */
+    public int countLegalMoves() {
+        return generateMoves(scratch, 0);
+    }
+
+    public String generateFEN() {
+        int n = writeFEN(fenBytes, 0);
+        return new String(fenBytes, 0, n, java.nio.charset.StandardCharsets.US_ASCII);
+    }
+
+    /** Añade la FEN completa (seis campos) a sb sin crear objetos intermedios. */
+    public StringBuilder appendFEN(StringBuilder sb) {
+        int n = writeFEN(fenBytes, 0);
+        for (int i = 0; i < n; i++) sb.append((char) fenBytes[i]);
+        return sb;
+    }
+
+    /**
+     * Escribe la FEN completa en dst a partir de off, en ASCII, y devuelve
+     * el índice siguiente. Caben siempre en MAX_FEN_LENGTH bytes.
+     */
+    public int writeFEN(byte[] dst, int off) {
+        if (!Metrics.ENABLED || !sampleMetric()) return encodeFEN(dst, off);
+        long t0 = System.nanoTime();
+        int n = encodeFEN(dst, off);
+        Metrics.FEN_WRITE.record(System.nanoTime() - t0, Metrics.SAMPLE);
+        return n;
+    }
+
+    private int encodeFEN(byte[] dst, int off) {
+        int n = off;
+
+        // Colocación
+        for (int r = 0; r < 8; r++) {
+            int empty = 0;
+            for (int c = 0; c < 8; c++) {
+                int p = squares[r * 8 + c];
+                if (p == EMPTY) {
+                    empty++;
+                } else {
+                    if (empty > 0) {
+                        dst[n++] = (byte) ('0' + empty);
+                        empty = 0;
+                    }
+                    dst[n++] = FEN_LETTERS[p];
+                }
+            }
+            if (empty > 0) dst[n++] = (byte) ('0' + empty);
+            if (r < 7) dst[n++] = '/';
+        }
+
+        // Turno
+        dst[n++] = ' ';
+        dst[n++] = (byte) (whiteTurn ? 'w' : 'b');
+
+        // Enroques
+        dst[n++] = ' ';
+        if (castling == 0) {
+            dst[n++] = '-';
+        } else {
+            for (int i = 0; i < 4; i++) {
+                if ((castling & (1 << i)) != 0) dst[n++] = CASTLE_LETTERS[i];
+            }
+        }
+
+        // Al paso
+        dst[n++] = ' ';
+        if (epSquare < 0) {
+            dst[n++] = '-';
+        } else {
+            dst[n++] = (byte) ('a' + (epSquare & 7));
+            dst[n++] = (byte) ('8' - (epSquare >> 3));
+        }
+
+        // Relojes
+        dst[n++] = ' ';
+        n = writeInt(dst, n, halfmoveClock);
+        dst[n++] = ' ';
+        n = writeInt(dst, n, fullmoveNumber);
+        return n;
+    }
+
+    private static int writeInt(byte[] dst, int n, int v) {
+        if (v >= 10) n = writeInt(dst, n, v / 10);
+        dst[n++] = (byte) ('0' + v % 10);
+        return n;
+    }
+
+    // ==========================================================
+    //                      MOVIMIENTOS LEGALES
+    // ==========================================================
+
+    /**
+     * Casillas destino de la pieza en (r, c) si le toca mover.
+     * Adaptador sobre generateMoves: las cuatro promociones a una misma
+     * casilla se devuelven una sola vez.
+     */
+    public List<int[]> getLegalMoves(int r, int c) {
+        if (!Metrics.ENABLED || !sampleMetric()) return legalMoveList(r, c);
+        long t0 = System.nanoTime();
+        List<int[]> out = legalMoveList(r, c);
+        Metrics.LEGAL_MOVES.record(System.nanoTime() - t0, Metrics.SAMPLE);
+        return out;
+    }
+
+    private List<int[]> legalMoveList(int r, int c) {
+        List<int[]> out = new ArrayList<>();
+        int sq = r * 8 + c;
+        int p = squares[sq];
+        if (p == EMPTY || (p < 6) != whiteTurn) return out;
+
+        int n = generateMoves(scratch, 0);
+        int lastTo = -1;
+        for (int i = 0; i < n; i++) {
+            int m = scratch[i];
+            if (Move.from(m) != sq) continue;
+            int to = Move.to(m);
+            if (to == lastTo) continue;
+            out.add(new int[]{to >> 3, to & 7});
+            lastTo = to;
+        }
+        return out;
+    }
+
+    /** Casillas destino de la pieza en sq como bitboard (0 si no le toca mover). */
+    public long legalTargets(int sq) {
+        if (!Metrics.ENABLED || !sampleMetric()) return targetsFrom(sq);
+        long t0 = System.nanoTime();
+        long targets = targetsFrom(sq);
+        Metrics.LEGAL_TARGETS.record(System.nanoTime() - t0, Metrics.SAMPLE);
+        return targets;
+    }
+
+    private long targetsFrom(int sq) {
+        int p = squares[sq];
+        if (p == EMPTY || (p < 6) != whiteTurn) return 0L;
+        long targets = 0L;
+        int n = generateMoves(scratch, 0);
+        for (int i = 0; i < n; i++) {
+            if (Move.from(scratch[i]) == sq) targets |= 1L << Move.to(scratch[i]);
+        }
+        return targets;
+    }
+
+    // ==========================================================
+    //              GENERADOR SIN ASIGNACIONES
+    // ==========================================================
+
+    /** Máximo de jugadas posibles en una posición legal (218) con margen. */
+    public static final int MAX_MOVES = 256;
+
+    private final int[] scratch = new int[MAX_MOVES];
+
+    private static final long ROW_2 = 0xFFL << 16;   // tras el primer avance negro
+    private static final long ROW_5 = 0xFFL << 40;   // tras el primer avance blanco
+
+    /**
+     * Escribe en moves[start..] todas las jugadas legales del bando que
+     * mueve, codificadas con Move, y devuelve el índice final.
+     * El buffer debe tener al menos MAX_MOVES posiciones libres.
+     *
+     * Las piezas que dan jaque y las clavadas se calculan una sola vez por
+     * posición: ninguna jugada se prueba sobre el tablero para descartarla.
+     */
+    public int generateMoves(int[] moves, int start) {
+        int n = start;
+        boolean white = whiteTurn;
+        int us = white ? 0 : 6, them = white ? 6 : 0;
+        long own = white ? whiteOcc : blackOcc;
+        long enemy = white ? blackOcc : whiteOcc;
+        long occ = occupied;
+        long empty = ~occ;
+
+        long kingBb = pieces[WK + us];
+        int ksq = kingBb != 0 ? Long.numberOfTrailingZeros(kingBb) : -1;
+        long checkers = 0, pinned = 0, checkMask = ~0L;
+
+        if (ksq >= 0) {
+            // -------------------- KING ---------------------
+            // sin el rey en la ocupación, para que no se esconda tras sí mismo
+            long occNoKing = occ ^ kingBb;
+            for (long t = Bitboards.KING[ksq] & ~own; t != 0; t &= t - 1) {
+                int to = Long.numberOfTrailingZeros(t);
+                if (attackersTo(to, occNoKing, !white) == 0)
+                    moves[n++] = Move.of(ksq, to, ((enemy >>> to) & 1) != 0 ? Move.CAPTURE : 0);
+            }
+
+            checkers = attackersTo(ksq, occ, !white);
+            if ((checkers & (checkers - 1)) != 0) return n;   // jaque doble: solo mueve el rey
+            if (checkers != 0)
+                checkMask = checkers | Bitboards.BETWEEN[ksq][Long.numberOfTrailingZeros(checkers)];
+
+            // clavadas: una única pieza propia entre el rey y una pieza enemiga de largo alcance
+            long queens = pieces[WQ + them];
+            long snipers = (Bitboards.rookAttacks(ksq, enemy) & (pieces[WR + them] | queens))
+                    | (Bitboards.bishopAttacks(ksq, enemy) & (pieces[WB + them] | queens));
+            for (; snipers != 0; snipers &= snipers - 1) {
+                long between = Bitboards.BETWEEN[ksq][Long.numberOfTrailingZeros(snipers)] & occ;
+                if (between != 0 && (between & (between - 1)) == 0 && (between & own) != 0) pinned |= between;
+            }
+        }
+
+        // -------------------- PAWN ---------------------
+        long pawns = pieces[WP + us];
+        long free = pawns & ~pinned;
+        long capturable = enemy & checkMask;
+        if (white) {
+            long one = (free >>> 8) & empty;
+            long two = ((one & ROW_5) >>> 8) & empty & checkMask;
+            n = addPawnMoves(moves, n, one & checkMask, 8, 0, Bitboards.RANK_8);
+            n = addPawnMoves(moves, n, two, 16, Move.DOUBLE_PUSH, 0L);
+            n = addPawnMoves(moves, n, ((free & ~Bitboards.FILE_A) >>> 9) & capturable, 9, Move.CAPTURE, Bitboards.RANK_8);
+            n = addPawnMoves(moves, n, ((free & ~Bitboards.FILE_H) >>> 7) & capturable, 7, Move.CAPTURE, Bitboards.RANK_8);
+        } else {
+            long one = (free << 8) & empty;
+            long two = ((one & ROW_2) << 8) & empty & checkMask;
+            n = addPawnMoves(moves, n, one & checkMask, -8, 0, Bitboards.RANK_1);
+            n = addPawnMoves(moves, n, two, -16, Move.DOUBLE_PUSH, 0L);
+            n = addPawnMoves(moves, n, ((free & ~Bitboards.FILE_A) << 7) & capturable, -7, Move.CAPTURE, Bitboards.RANK_1);
+            n = addPawnMoves(moves, n, ((free & ~Bitboards.FILE_H) << 9) & capturable, -9, Move.CAPTURE, Bitboards.RANK_1);
+        }
+
+        // peones clavados: solo pueden moverse sobre la línea de la clavada
+        for (long b = pawns & pinned; b != 0; b &= b - 1) {
+            int from = Long.numberOfTrailingZeros(b);
+            long line = Bitboards.LINE[ksq][from] & checkMask;
+            long targets = Bitboards.PAWN_ATTACKS[white ? 0 : 1][from] & enemy;
+            int one = white ? from - 8 : from + 8;
+            if (((empty >>> one) & 1) != 0) {
+                targets |= 1L << one;
+                int two = white ? from - 16 : from + 16;
+                if ((from >> 3) == (white ? 6 : 1) && ((empty >>> two) & 1) != 0) targets |= 1L << two;
+            }
+            for (targets &= line; targets != 0; targets &= targets - 1) {
+                int to = Long.numberOfTrailingZeros(targets);
+                int flags = ((enemy >>> to) & 1) != 0 ? Move.CAPTURE
+                        : (to - from == 16 || from - to == 16) ? Move.DOUBLE_PUSH : 0;
+                n = addPawnMoves(moves, n, 1L << to, from - to, flags, Bitboards.RANK_8 | Bitboards.RANK_1);
+            }
+        }
+
+        // captura al paso: se comprueba quitando ambos peones de la ocupación,
+        // lo que cubre también la clavada horizontal sobre la fila del rey
+        if (epSquare >= 0 && ((empty >>> epSquare) & 1) != 0) {
+            int capSq = white ? epSquare + 8 : epSquare - 8;
+            if (((pieces[WP + them] >>> capSq) & 1) != 0) {
+                for (long b = Bitboards.PAWN_ATTACKS[white ? 1 : 0][epSquare] & pawns; b != 0; b &= b - 1) {
+                    int from = Long.numberOfTrailingZeros(b);
+                    long after = (occ ^ (1L << from) ^ (1L << capSq)) | (1L << epSquare);
+                    if (ksq < 0 || (attackersTo(ksq, after, !white) & ~(1L << capSq)) == 0)
+                        moves[n++] = Move.of(from, epSquare, Move.CAPTURE | Move.EN_PASSANT);
+                }
+            }
+        }
+
+        long mask = ~own & checkMask;
+
+        // -------------------- KNIGHT ---------------------
+        // un caballo clavado nunca puede moverse
+        for (long b = pieces[WN + us] & ~pinned; b != 0; b &= b - 1) {
+            int from = Long.numberOfTrailingZeros(b);
+            n = addMoves(moves, n, from, Bitboards.KNIGHT[from] & mask, enemy);
+        }
+
+        // -------------------- BISHOP / ROOK / QUEEN ---------------------
+        for (long b = pieces[WB + us]; b != 0; b &= b - 1) {
+            int from = Long.numberOfTrailingZeros(b);
+            n = addMoves(moves, n, from, Bitboards.bishopAttacks(from, occ) & pinMask(mask, pinned, ksq, from), enemy);
+        }
+        for (long b = pieces[WR + us]; b != 0; b &= b - 1) {
+            int from = Long.numberOfTrailingZeros(b);
+            n = addMoves(moves, n, from, Bitboards.rookAttacks(from, occ) & pinMask(mask, pinned, ksq, from), enemy);
+        }
+        for (long b = pieces[WQ + us]; b != 0; b &= b - 1) {
+            int from = Long.numberOfTrailingZeros(b);
+            n = addMoves(moves, n, from, Bitboards.queenAttacks(from, occ) & pinMask(mask, pinned, ksq, from), enemy);
+        }
+
+        // -------------------- ENROQUE ---------------------
+        if (checkers == 0 && ksq == (white ? 60 : 4)) {
+            int oo = white ? WHITE_OO : BLACK_OO, ooo = white ? WHITE_OOO : BLACK_OOO;
+            long rooks = pieces[WR + us];
+            if ((castling & oo) != 0 && (occ & (0x60L << ksq - 4)) == 0 && ((rooks >>> (ksq + 3)) & 1) != 0
+                    && attackersTo(ksq + 1, occ, !white) == 0 && attackersTo(ksq + 2, occ, !white) == 0)
+                moves[n++] = Move.of(ksq, ksq + 2, Move.CASTLE);
+            if ((castling & ooo) != 0 && (occ & (0x0EL << ksq - 4)) == 0 && ((rooks >>> (ksq - 4)) & 1) != 0
+                    && attackersTo(ksq - 1, occ, !white) == 0 && attackersTo(ksq - 2, occ, !white) == 0)
+                moves[n++] = Move.of(ksq, ksq - 2, Move.CASTLE);
+        }
+        return n;
+    }
+
+    private static long pinMask(long mask, long pinned, int ksq, int from) {
+        return ((pinned >>> from) & 1) != 0 ? mask & Bitboards.LINE[ksq][from] : mask;
+    }
+
+    // delta = origen - destino; las llegadas a promoRank se expanden en D, T, A, C
+    private static int addPawnMoves(int[] moves, int n, long targets, int delta, int flags, long promoRank) {
+        for (; targets != 0; targets &= targets - 1) {
+            int to = Long.numberOfTrailingZeros(targets);
+            int from = to + delta;
+            if (((1L << to) & promoRank) != 0) {
+                moves[n++] = Move.promote(from, to, WQ, flags);
+                moves[n++] = Move.promote(from, to, WR, flags);
+                moves[n++] = Move.promote(from, to, WB, flags);
+                moves[n++] = Move.promote(from, to, WN, flags);
+            } else {
+                moves[n++] = Move.of(from, to, flags);
+            }
+        }
+        return n;
+    }
+
+    private static int addMoves(int[] moves, int n, int from, long targets, long enemy) {
+        for (; targets != 0; targets &= targets - 1) {
+            int to = Long.numberOfTrailingZeros(targets);
+            moves[n++] = Move.of(from, to, ((enemy >>> to) & 1) != 0 ? Move.CAPTURE : 0);
+        }
+        return n;
+    }
+
+    public void loadFEN(String fen) throws FenException {
+        if (!Metrics.ENABLED || !sampleMetric()) {
+            parseFEN(fen);
+            return;
+        }
+        long t0 = System.nanoTime();
+        try {
+            parseFEN(fen);
+        } finally {
+            Metrics.FEN_PARSE.record(System.nanoTime() - t0, Metrics.SAMPLE);
+        }
+    }
+
+    private void parseFEN(String fen) throws FenException {
+        if (fen == null) throw new FenException("FEN vacío", 0, 1);
+
+        // se valida entera antes de tocar el tablero
+        int[] parsed = new int[64];
+        int[] fields = new int[5];
+        FenParser.parse(fen, 0, fen.length(), 0, parsed, fields);
+        setPosition(parsed, fields);
+
+        // La posición cargada es el comienzo de un historial nuevo
+        history.reset(this);
+        historyIndex = 0;
+    }
+
+    /** Como loadFEN, con una posición ya cargada en other (p. ej. en otro hilo). */
+    public void loadPosition(GameState other) {
+        copyFrom(other);
+        history.reset(this);
+        historyIndex = 0;
+    }
+
+    /** Como loadFEN, desde una posición inmutable. */
+    public void loadPosition(Position p) {
+        p.copyInto(this);
+        history.reset(this);
+        historyIndex = 0;
+    }
+
+    /**
+     * Carga una posición ya validada: pieza por casilla (o EMPTY) y los
+     * campos turno (1 = blancas), enroques, casilla al paso, reloj de 50
+     * jugadas y número de jugada, en ese orden.
+     */
+    void setPosition(int[] parsed, int[] fields) {
+        clearBoard();
+        for (int sq = 0; sq < 64; sq++) {
+            if (parsed[sq] != EMPTY) putPiece(parsed[sq], sq);
+        }
+        whiteTurn = fields[0] != 0;
+        castling = fields[1];
+        epSquare = fields[2];
+        halfmoveClock = fields[3];
+        fullmoveNumber = fields[4];
+        key = computeKey();
+    }
+
+    // ==========================================================
+    //              POSICIÓN EMPAQUETADA (32 BYTES)
+    // ==========================================================
+    //
+    //   [0]  ocupación (un bit por casilla)
+    //   [1]  código de pieza (4 bits) de las 16 primeras casillas ocupadas
+    //   [2]  ídem para las 16 siguientes (como mucho hay 32 piezas)
+    //   [3]  turno (1) | enroques (4) | al paso + 1 (7) | reloj (20) | jugada (20)
+
+    public static final int PACKED_LONGS = 4;
+
+    /** Escribe la posición en dst[off .. off + 3]. */
+    public void pack(long[] dst, int off) {
+        long nibbles0 = 0, nibbles1 = 0;
+        int i = 0;
+        for (long b = occupied; b != 0; b &= b - 1, i++) {
+            long code = squares[Long.numberOfTrailingZeros(b)];
+            if (i < 16) nibbles0 |= code << (4 * i);
+            else nibbles1 |= code << (4 * (i - 16));
+        }
+        dst[off] = occupied;
+        dst[off + 1] = nibbles0;
+        dst[off + 2] = nibbles1;
+        dst[off + 3] = packedMeta();
+    }
+
+    private long packedMeta() {
+        return (whiteTurn ? 1L : 0L)
+                | ((long) castling << 1)
+                | ((long) (epSquare + 1) << 5)
+                | ((long) halfmoveClock << 12)
+                | ((long) fullmoveNumber << 32);
+    }
+
+    /** Carga una posición escrita con pack (la pila de jugadas queda vacía). */
+    public void unpack(long[] src, int off) {
+        unpack(src[off], src[off + 1], src[off + 2], src[off + 3]);
+    }
+
+    /** Igual que unpack(long[], int) con los cuatro longs por separado. */
+    public void unpack(long occupancy, long nibbles0, long nibbles1, long meta) {
+        unpack(occupancy, nibbles0, nibbles1, meta, 0L);
+        key = computeKey();
+    }
+
+    // Con la clave ya conocida (la de un Position): no la recalcula
+    void unpack(long occupancy, long nibbles0, long nibbles1, long meta, long key) {
+        clearBoard();
+        int i = 0;
+        for (long b = occupancy; b != 0; b &= b - 1, i++) {
+            long nibbles = i < 16 ? nibbles0 : nibbles1;
+            putPiece((int) (nibbles >>> (4 * (i & 15))) & 15, Long.numberOfTrailingZeros(b));
+        }
+        whiteTurn = (meta & 1) != 0;
+        castling = (int) (meta >>> 1) & 15;
+        epSquare = (int) ((meta >>> 5) & 127) - 1;
+        halfmoveClock = (int) (meta >>> 12) & 0xFFFFF;
+        fullmoveNumber = (int) (meta >>> 32) & 0xFFFFF;
+        this.key = key;
+    }
+
+    // ==========================================================
+    //                     FIN DE PARTIDA
+    // ==========================================================
+    //
+    // Nada de esto recorre la partida entera: las repeticiones solo se
+    // buscan desde la última captura o jugada de peón (como mucho
+    // halfmoveClock / 2 claves), el material se mira en los bitboards y
+    // mate y ahogado cuestan una generación de jugadas. Las tablas por
+    // 50 jugadas y triple repetición se dan por hechas sin reclamarlas.
+
+    public static final int ONGOING = 0, CHECKMATE = 1, STALEMATE = 2,
+            REPETITION = 3, FIFTY_MOVES = 4, INSUFFICIENT_MATERIAL = 5;
+
+    // Casillas claras (a8 = 0 es clara)
+    private static final long LIGHT_SQUARES = 0xAA55AA55AA55AA55L;
+
+    /** Estado de la partida en la posición actual: ONGOING o cómo ha terminado. */
+    public int outcome() {
+        if (countLegalMoves() == 0) return isInCheck(whiteTurn) ? CHECKMATE : STALEMATE;
+        if (isInsufficientMaterial()) return INSUFFICIENT_MATERIAL;
+        if (halfmoveClock >= 100) return FIFTY_MOVES;
+        if (repetitions() >= 3) return REPETITION;
+        return ONGOING;
+    }
+
+    /** Texto de un resultado de outcome() para la interfaz. */
+    public static String describeOutcome(int outcome) {
+        switch (outcome) {
+            case CHECKMATE: return "Jaque mate";
+            case STALEMATE: return "Tablas por rey ahogado";
+            case REPETITION: return "Tablas por triple repetición";
+            case FIFTY_MOVES: return "Tablas por la regla de las 50 jugadas";
+            case INSUFFICIENT_MATERIAL: return "Tablas por material insuficiente";
+            default: return "En juego";
+        }
+    }
+
+    /** Veces que ha aparecido la posición actual, esta incluida. */
+    public int repetitions() {
+        int count = 1;
+        int limit = Math.min(halfmoveClock, ply + priorCount);
+        for (int d = 4; d <= limit; d += 2) {
+            if (keyBack(d) == key) count++;
+        }
+        return count;
+    }
+
+    /** ¿La posición actual ya había aparecido? (la búsqueda lo trata como tablas) */
+    public boolean isRepetition() {
+        int limit = Math.min(halfmoveClock, ply + priorCount);
+        for (int d = 4; d <= limit; d += 2) {
+            if (keyBack(d) == key) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Ningún bando puede dar mate: rey contra rey, rey y caballo contra rey,
+     * o solo alfiles (de cualquier bando) y todos en casillas del mismo color.
+     */
+    public boolean isInsufficientMaterial() {
+        if ((pieces[WP] | pieces[BP] | pieces[WR] | pieces[BR] | pieces[WQ] | pieces[BQ]) != 0) return false;
+        long knights = pieces[WN] | pieces[BN], bishops = pieces[WB] | pieces[BB];
+        if (knights == 0) return (bishops & LIGHT_SQUARES) == 0 || (bishops & ~LIGHT_SQUARES) == 0;
+        return bishops == 0 && Long.bitCount(knights) == 1;
+    }
+
+    // Clave de la posición de hace d jugadas (1 <= d <= ply + priorCount)
+    private long keyBack(int d) {
+        return d <= ply ? keyStack[ply - d] : priorKeys[d - ply - 1];
+    }
+
+    public boolean isInCheck(boolean whiteKing) {
+        if (!Metrics.ENABLED || !sampleMetric()) return inCheck(whiteKing);
+        long t0 = System.nanoTime();
+        boolean check = inCheck(whiteKing);
+        Metrics.IN_CHECK.record(System.nanoTime() - t0, Metrics.SAMPLE);
+        return check;
+    }
+
+    // Sin contar en Metrics: la búsqueda lo llama en cada nodo
+    boolean inCheck(boolean whiteKing) {
+        long king = pieces[whiteKing ? WK : BK];
+        if (king == 0) return false; // rey no existe en tablero
+        return isSquareAttacked(Long.numberOfTrailingZeros(king), !whiteKing);
+    }
+
+    /** Piezas del color indicado que atacan sq con la ocupación occ. */
+    long attackersTo(int sq, long occ, boolean byWhite) {
+        int off = byWhite ? 0 : 6;
+        long queens = pieces[WQ + off];
+        return (Bitboards.PAWN_ATTACKS[byWhite ? 1 : 0][sq] & pieces[WP + off])
+                | (Bitboards.KNIGHT[sq] & pieces[WN + off])
+                | (Bitboards.KING[sq] & pieces[WK + off])
+                | (Bitboards.bishopAttacks(sq, occ) & (pieces[WB + off] | queens))
+                | (Bitboards.rookAttacks(sq, occ) & (pieces[WR + off] | queens));
+    }
+
+    /** ¿Alguna pieza del color indicado ataca la casilla sq? */
+    public boolean isSquareAttacked(int sq, boolean byWhite) {
+        int off = byWhite ? 0 : 6;
+        // un peón blanco ataca sq desde donde un peón negro en sq atacaría, y viceversa
+        if ((Bitboards.PAWN_ATTACKS[byWhite ? 1 : 0][sq] & pieces[WP + off]) != 0) return true;
+        if ((Bitboards.KNIGHT[sq] & pieces[WN + off]) != 0) return true;
+        if ((Bitboards.KING[sq] & pieces[WK + off]) != 0) return true;
+        long queens = pieces[WQ + off];
+        if ((Bitboards.bishopAttacks(sq, occupied) & (pieces[WB + off] | queens)) != 0) return true;
+        return (Bitboards.rookAttacks(sq, occupied) & (pieces[WR + off] | queens)) != 0;
+    }
+
+}
@@ -0,0 +1,202 @@
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// ==========================================================
+//          ALMACÉN BINARIO DE PARTIDAS (ACCESO ALEATORIO)
+// ==========================================================
+//
+// Proyecta en memoria un archivo escrito por GameStoreWriter y decodifica
+// cualquier partida o posición por su índice sin leer el resto: el pie
+// guarda el desplazamiento de cada registro. Una partida ocupa 36 bytes
+// más 2 por jugada, frente a unos 5-6 por jugada en PGN.
+//
+// Las lecturas son absolutas sobre el buffer proyectado, así que varios
+// hilos pueden compartir un GameStore si cada uno usa su propio GameState.
+// El archivo debe caber en una sola proyección (2 GB).
+
+public final class GameStore implements AutoCloseable {
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buf;
+    private final int count;
+    private final int indexStart;
+
+    public GameStore(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        long size = channel.size();
+        if (size > Integer.MAX_VALUE) {
+            channel.close();
+            throw new IOException("GameStore: el archivo pasa de 2 GB");
+        }
+        buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        if (size < GameStoreWriter.HEADER_BYTES + 16 || buf.getLong(0) != GameStoreWriter.MAGIC
+                || buf.getLong((int) size - 8) != GameStoreWriter.MAGIC) {
+            channel.close();
+            throw new IOException("GameStore: no es un almacén de partidas");
+        }
+        if (buf.getInt(8) != GameStoreWriter.VERSION) {
+            channel.close();
+            throw new IOException("GameStore: versión " + buf.getInt(8) + " no soportada");
+        }
+        count = (int) buf.getLong((int) size - 16);
+        indexStart = (int) size - 16 - 8 * count;
+    }
+
+    /** Número de registros (partidas y posiciones sueltas). */
+    public int size() {
+        return count;
+    }
+
+    private int offset(int game) {
+        if (game < 0 || game >= count) throw new IndexOutOfBoundsException("GameStore: " + game);
+        return (int) buf.getLong(indexStart + 8 * game);
+    }
+
+    public int moveCount(int game) {
+        return buf.getShort(offset(game) + 32) & 0xFFFF;
+    }
+
+    public int result(int game) {
+        return buf.get(offset(game) + 34);
+    }
+
+    /** Jugada de 16 bits número ply (origen | destino << 6 | coronación << 12). */
+    public int rawMove(int game, int ply) {
+        return buf.getShort(offset(game) + GameStoreWriter.RECORD_BYTES + 2 * ply) & 0xFFFF;
+    }
+
+    /** Deja en target la posición tras las primeras ply jugadas de la partida. */
+    public void position(int game, int ply, GameState target) {
+        int off = offset(game);
+        int n = buf.getShort(off + 32) & 0xFFFF;
+        if (ply < 0 || ply > n) throw new IndexOutOfBoundsException("GameStore: jugada " + ply);
+        unpackStart(off, target);
+        for (int i = 0; i < ply; i++) target.makeMove(decode(target, buf.getShort(off + GameStoreWriter.RECORD_BYTES + 2 * i)));
+    }
+
+    /** Copia la partida en dst; work es una posición de trabajo. */
+    public void read(int game, PgnGame dst, GameState work) {
+        int off = offset(game);
+        int n = buf.getShort(off + 32) & 0xFFFF;
+        dst.clear();
+        dst.result = buf.get(off + 34);
+        unpackStart(off, work);
+        if ((buf.get(off + 35) & GameStoreWriter.FLAG_INITIAL) == 0) dst.startFen = work.generateFEN();
+        for (int i = 0; i < n; i++) {
+            int move = decode(work, buf.getShort(off + GameStoreWriter.RECORD_BYTES + 2 * i));
+            work.makeMove(move);
+            dst.addMove(move);
+        }
+    }
+
+    public String fen(int game, int ply) {
+        GameState pos = new GameState();
+        position(game, ply, pos);
+        return pos.generateFEN();
+    }
+
+    private void unpackStart(int off, GameState target) {
+        target.unpack(buf.getLong(off), buf.getLong(off + 8), buf.getLong(off + 16), buf.getLong(off + 24));
+    }
+
+    /**
+     * Jugada completa (con banderas) a partir de su forma de 16 bits. Las
+     * banderas se deducen del tablero sin generar jugadas: el archivo solo
+     * contiene jugadas legales escritas por GameStoreWriter.
+     */
+    static int decode(GameState pos, int raw) {
+        int from = raw & 63, to = (raw >>> 6) & 63, promo = (raw >>> 12) & 7;
+        int piece = pos.pieceAt(from >> 3, from & 7);
+        int flags = pos.pieceAt(to >> 3, to & 7) != GameState.EMPTY ? Move.CAPTURE : 0;
+        if (piece == GameState.WP || piece == GameState.BP) {
+            int delta = to - from;
+            if (delta == 16 || delta == -16) flags |= Move.DOUBLE_PUSH;
+            else if (to == pos.getEnPassantSquare() && (delta & 7) != 0) flags |= Move.CAPTURE | Move.EN_PASSANT;
+        } else if ((piece == GameState.WK || piece == GameState.BK) && (to - from == 2 || from - to == 2)) {
+            flags |= Move.CASTLE;
+        }
+        return promo != 0 ? Move.promote(from, to, promo, flags) : Move.of(from, to, flags);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    // ==========================================================
+    //                      LÍNEA DE COMANDOS
+    // ==========================================================
+    //
+    //   java GameStore import <entrada.pgn> <salida.cdb> [añadir]
+    //   java GameStore export <entrada.cdb> <salida.pgn>
+    //   java GameStore fen <archivo.cdb> <partida> <jugada>
+    //   java GameStore bench <archivo.cdb>
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.out.println("Uso: java GameStore import|export|fen|bench ...");
+            return;
+        }
+        switch (args[0]) {
+            case "import": {
+                long t0 = System.nanoTime();
+                GameState work = new GameState();
+                try (GameStoreWriter w = new GameStoreWriter(Path.of(args[2]), args.length > 3)) {
+                    PgnReader.readFile(Path.of(args[1]), game -> {
+                        try {
+                            w.add(game, work);
+                        } catch (IOException | FenException e) {
+                            throw new IllegalStateException(e);
+                        }
+                    });
+                    System.out.printf("%d partidas en %.2f s%n", w.size(), (System.nanoTime() - t0) / 1e9);
+                }
+                System.out.printf("%d bytes (PGN: %d)%n",
+                        java.nio.file.Files.size(Path.of(args[2])), java.nio.file.Files.size(Path.of(args[1])));
+                break;
+            }
+            case "export": {
+                GameState work = new GameState();
+                PgnGame game = new PgnGame();
+                try (GameStore store = new GameStore(Path.of(args[1]));
+                     PgnWriter w = new PgnWriter(java.nio.file.Files.newBufferedWriter(Path.of(args[2])))) {
+                    for (int i = 0; i < store.size(); i++) {
+                        store.read(i, game, work);
+                        w.write(game);
+                    }
+                }
+                break;
+            }
+            case "fen": {
+                try (GameStore store = new GameStore(Path.of(args[1]))) {
+                    System.out.println(store.fen(Integer.parseInt(args[2]), Integer.parseInt(args[3])));
+                }
+                break;
+            }
+            case "bench": {
+                try (GameStore store = new GameStore(Path.of(args[1]))) {
+                    GameState work = new GameState();
+                    java.util.SplittableRandom rnd = new java.util.SplittableRandom(1);
+                    long plies = 0;
+                    int lookups = 200_000;
+                    long t0 = System.nanoTime();
+                    for (int i = 0; i < lookups; i++) {
+                        int g = rnd.nextInt(store.size());
+                        int ply = rnd.nextInt(store.moveCount(g) + 1);
+                        store.position(g, ply, work);
+                        plies += ply;
+                    }
+                    double seconds = (System.nanoTime() - t0) / 1e9;
+                    System.out.printf("%d posiciones al azar en %.2f s: %.0f/s (%.1f jugadas rehechas de media)%n",
+                            lookups, seconds, lookups / seconds, (double) plies / lookups);
+                }
+                break;
+            }
+            default:
+                System.out.println("Orden desconocida: " + args[0]);
+        }
+    }
+}
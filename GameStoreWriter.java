@@ -0,0 +1,148 @@
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+// ==========================================================
+//              ESCRITOR DEL ALMACÉN BINARIO DE PARTIDAS
+// ==========================================================
+//
+// Formato (big endian, ver GameStore):
+//
+//   cabecera   MAGIC (8) | VERSION (4) | 0 (4)
+//   registro   posición de partida (4 longs de GameState.pack, 32 bytes)
+//              | jugadas (2) | resultado (1) | banderas (1)
+//              | jugadas de 16 bits: from | to << 6 | coronación << 12
+//   pie        desplazamiento de cada registro (8 × n) | n (8) | MAGIC (8)
+//
+// Una posición suelta es un registro sin jugadas. Se escribe en
+// "<archivo>.part" y close() lo renombra sobre el original, así que un
+// corte a medias deja el almacén anterior intacto. En modo añadir se
+// copian a .part los registros existentes (sin su pie) y se sigue detrás.
+
+public final class GameStoreWriter implements Closeable {
+
+    static final long MAGIC = 0x43484553_53444231L;   // "CHESSDB1"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 16;
+    static final int RECORD_BYTES = 36;                // sin las jugadas
+    static final int FLAG_INITIAL = 1;                 // empieza en la posición inicial
+    static final int MAX_MOVES = 0xFFFF;
+
+    private static final long[] INITIAL = new long[GameState.PACKED_LONGS];
+    static {
+        new GameState().pack(INITIAL, 0);
+    }
+
+    private final Path file, tmp;
+    private final DataOutputStream out;
+    private final long[] packed = new long[GameState.PACKED_LONGS];
+    private long[] offsets = new long[1024];
+    private int count;
+    private long position;
+
+    /** Crea el archivo o, si append y ya existe, sigue añadiendo al final. */
+    public GameStoreWriter(Path file, boolean append) throws IOException {
+        this.file = file;
+        tmp = file.resolveSibling(file.getFileName() + ".part");
+        FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            if (append && Files.exists(file) && Files.size(file) > 0) {
+                try (FileChannel old = FileChannel.open(file, StandardOpenOption.READ)) {
+                    readFooter(old);
+                    for (long done = 0; done < position; ) done += old.transferTo(done, position - done, channel);
+                }
+            } else {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+                header.putLong(MAGIC).putInt(VERSION).putInt(0).flip();
+                while (header.hasRemaining()) channel.write(header, HEADER_BYTES - header.remaining());
+                position = HEADER_BYTES;
+            }
+            channel.position(position);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+    }
+
+    // Lee el índice del almacén existente; position queda donde empezaba
+    private void readFooter(FileChannel channel) throws IOException {
+        long size = channel.size();
+        ByteBuffer tail = ByteBuffer.allocate(16);
+        channel.read(tail, size - 16);
+        long n = tail.getLong(0);
+        if (tail.getLong(8) != MAGIC || n < 0 || n > Integer.MAX_VALUE)
+            throw new IOException("GameStoreWriter: no es un almacén de partidas");
+        count = (int) n;
+        offsets = new long[Math.max(1024, count)];
+        ByteBuffer index = ByteBuffer.allocate(count * 8);
+        long indexStart = size - 16 - 8L * count;
+        while (index.hasRemaining()) channel.read(index, indexStart + index.position());
+        index.flip().asLongBuffer().get(offsets, 0, count);
+        position = indexStart;
+    }
+
+    /** Número de registros escritos (incluidos los que ya había). */
+    public int size() {
+        return count;
+    }
+
+    /** Añade la partida; work es una posición de trabajo. Devuelve su índice. */
+    public int add(PgnGame game, GameState work) throws IOException, FenException {
+        game.start(work);
+        work.pack(packed, 0);
+        return add(packed, game.startFen == null, game, null, game.length(), game.result);
+    }
+
+    /** Añade una posición suelta (registro sin jugadas). */
+    public int addPosition(GameState pos) throws IOException {
+        pos.pack(packed, 0);
+        return add(packed, Arrays.equals(packed, INITIAL), null, null, 0, PgnGame.UNKNOWN);
+    }
+
+    /** Añade la partida que empieza en start con moves[0 .. n). */
+    public int add(GameState start, int[] moves, int n, int result) throws IOException {
+        start.pack(packed, 0);
+        return add(packed, Arrays.equals(packed, INITIAL), null, moves, n, result);
+    }
+
+    private int add(long[] startPacked, boolean initial, PgnGame game, int[] moves, int n, int result)
+            throws IOException {
+        if (n > MAX_MOVES) throw new IOException("GameStoreWriter: más de " + MAX_MOVES + " jugadas");
+        if (count == offsets.length) offsets = Arrays.copyOf(offsets, count * 2);
+        offsets[count] = position;
+
+        for (long l : startPacked) out.writeLong(l);
+        out.writeShort(n);
+        out.writeByte(result);
+        out.writeByte(initial ? FLAG_INITIAL : 0);
+        for (int i = 0; i < n; i++) out.writeShort(encode(game != null ? game.moveAt(i) : moves[i]));
+        position += RECORD_BYTES + 2L * n;
+        return count++;
+    }
+
+    /** Jugada de 16 bits: origen, destino y tipo de coronación. */
+    static int encode(int move) {
+        return Move.from(move) | Move.to(move) << 6 | Move.promotion(move) << 12;
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (int i = 0; i < count; i++) out.writeLong(offsets[i]);
+        out.writeLong(count);
+        out.writeLong(MAGIC);
+        out.close();
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
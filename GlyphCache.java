@@ -0,0 +1,81 @@
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// ==========================================================
+//          CASILLAS PRE-DIBUJADAS (CACHÉ POR TAMAÑO)
+// ==========================================================
+//
+// Cada combinación de pieza (o vacía), color de casilla y resaltado se
+// dibuja una vez por tamaño en una imagen opaca; pintar una casilla es
+// copiar esa imagen, sin texto ni mezcla de transparencias. La caché es
+// global: todos los tableros del mismo tamaño comparten sus 52 imágenes.
+// Solo guarda los MAX_SIZES tamaños usados más recientemente, así que
+// arrastrar el borde de la ventana no acumula un juego por cada tamaño
+// intermedio.
+
+final class GlyphCache {
+
+    static final Color LIGHT = new Color(240, 217, 181);
+    static final Color DARK = new Color(181, 136, 99);
+    static final Color TARGET = new Color(0, 255, 0, 120);
+
+    static final int MAX_SIZES = 4;
+
+    // En orden de acceso: el primero es el menos usado
+    private static final LinkedHashMap<Integer, BufferedImage[]> BY_SIZE = new LinkedHashMap<>(8, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, BufferedImage[]> eldest) {
+            return size() > MAX_SIZES;
+        }
+    };
+
+    private GlyphCache() {
+    }
+
+    /** Índice en tiles(): pieza 0..11 o EMPTY, casilla oscura, destino resaltado. */
+    static int index(int piece, boolean dark, boolean target) {
+        return (piece + 1) * 4 + (dark ? 2 : 0) + (target ? 1 : 0);
+    }
+
+    /** Las 13 x 4 casillas de size x size píxeles (ver index). */
+    static synchronized BufferedImage[] tiles(int size) {
+        return BY_SIZE.computeIfAbsent(size, GlyphCache::render);
+    }
+
+    // Mismo dibujo que el texto de antes: Serif de size - 10 puntos, centrado
+    private static BufferedImage[] render(int size) {
+        int side = Math.max(1, size);
+        BufferedImage[] out = new BufferedImage[13 * 4];
+        Font font = new Font("Serif", Font.PLAIN, Math.max(1, size - 10));
+        for (int i = 0; i < out.length; i++) {
+            int piece = i / 4 - 1;
+            BufferedImage img = new BufferedImage(side, side, BufferedImage.TYPE_INT_RGB);
+            Graphics2D g = img.createGraphics();
+            g.setColor((i & 2) == 0 ? LIGHT : DARK);
+            g.fillRect(0, 0, side, side);
+            if ((i & 1) != 0) {
+                g.setColor(TARGET);
+                g.fillRect(0, 0, side, side);
+            }
+            if (piece != GameState.EMPTY) {
+                g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+                g.setFont(font);
+                g.setColor(Color.BLACK);
+                FontMetrics fm = g.getFontMetrics();
+                String glyph = GameState.GLYPHS[piece];
+                g.drawString(glyph, (size - fm.stringWidth(glyph)) / 2, (size + fm.getAscent()) / 2);
+            }
+            g.dispose();
+            out[i] = img;
+        }
+        return out;
+    }
+}
@@ -2,7 +2,20 @@ import javax.swing.*;
 import java.awt.*;
 
 public class Main {
-    public static void main(String[] args) {
+    public static void main(String[] args) throws Exception {
+        // sin ventana: servidor de partidas por TCP (ver GameServer)
+        if (args.length > 0 && args[0].equals("--server")) {
+            GameServer.main(java.util.Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        // sin ventana: motor UCI por la entrada estándar (ver Uci)
+        if (args.length > 0 && args[0].equals("--uci")) {
+            Uci.main(java.util.Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        // con -Dajedrez.metrics=true: JMX y resumen al cerrar (ver Metrics)
+        Metrics.register();
+        Metrics.printOnExit();
 
         SwingUtilities.invokeLater(() -> {
 
@@ -15,10 +28,22 @@ public class Main {
             f.setLayout(new BorderLayout());
 
 GameState game = new GameState();
-            ChessBoardPanel board = new ChessBoardPanel(game);
+            AnalysisService analysis = new AnalysisService();
+            ChessBoardPanel board = new ChessBoardPanel(game, analysis);
 
             f.add(board, BorderLayout.CENTER);
 
+//Evaluación y mejor línea en vivo (las actualizaciones llegan de AnalysisService)
+
+            JLabel evalLabel = new JLabel(" ");
+            evalLabel.setFont(new Font("Monospaced", Font.PLAIN, 14));
+            f.add(evalLabel, BorderLayout.NORTH);
+            board.setEvaluationListener(ev -> {
+                if (ev.outcome != GameState.ONGOING) evalLabel.setText(GameState.describeOutcome(ev.outcome));
+                else if (ev.depth > 0) evalLabel.setText(Search.formatScore(ev.whiteScore)
+                        + "  prof. " + ev.depth + "  " + ev.line);
+            });
+
             JPanel bottom = new JPanel();
             f.add(bottom, BorderLayout.SOUTH);
 
@@ -44,23 +69,22 @@ GameState game = new GameState();
                 if (choice == 0) {
                     // Reiniciar a posición inicial
                     game.resetBoard();
-                    game.history.clear();
-                    game.history.add(game.generateFEN());
-                    board.repaint();
+                    board.clearSelection();
                 } else if (choice == 1) {
                     // Solicitar FEN
                     String fen = JOptionPane.showInputDialog(f, "Ingresa el código FEN:");
                     if (fen != null && !fen.trim().isEmpty()) {
-                        try {
-                            game.loadFEN(fen); // Método que carga un FEN
-                            game.history.clear();
-                            game.history.add(fen);
-                            board.repaint();
-                        } catch (Exception ex) {
-                            JOptionPane.showMessageDialog(f,
-                                    "Error cargando FEN:\n" + ex.getMessage(),
-                                    "Error", JOptionPane.ERROR_MESSAGE);
-                        }
+                        // se valida y carga fuera del EDT; aquí solo se copia (y empieza historial nuevo)
+                        analysis.loadFen(fen, (parsed, ex) -> {
+                            if (parsed != null) {
+                                game.loadPosition(parsed);
+                                board.clearSelection();
+                            } else {
+                                JOptionPane.showMessageDialog(f,
+                                        "Error cargando FEN:\n" + ex.getMessage(),
+                                        "Error", JOptionPane.ERROR_MESSAGE);
+                            }
+                        });
                     }
                 }
             });
@@ -75,10 +99,11 @@ GameState game = new GameState();
                 dialog.setSize(500, 400);
                 dialog.setLocationRelativeTo(f);
 
+                // Las FEN se calculan fuera del EDT y llenan la lista al llegar
                 DefaultListModel<String> model = new DefaultListModel<>();
-                for (int i = 0; i < game.history.size(); i++) {
-                    model.addElement((i + 1) + ". " + game.history.get(i));
-                }
+                analysis.history(game, fens -> {
+                    for (int i = 0; i < fens.size(); i++) model.addElement((i + 1) + ". " + fens.get(i));
+                });
 
                 JList<String> list = new JList<>(model);
                 list.setFont(new Font("Monospaced", Font.PLAIN, 14));
@@ -91,21 +116,17 @@ GameState game = new GameState();
                 loadBtn.addActionListener(ev -> {
                     int index = list.getSelectedIndex();
                     if (index >= 0) {
-                        String fen = game.history.get(index);
-                        try {
-                            game.resetBoard();
-                            board.repaint();
-                        } catch (Exception ex) {
-                            JOptionPane.showMessageDialog(dialog,
-                                    "Error cargando FEN:\n" + ex.getMessage(),
-                                    "Error", JOptionPane.ERROR_MESSAGE);
-                        }
+                        // Navegar a esa jugada; si luego se mueve, la partida sigue desde ahí
+                        game.gotoPly(index);
+                        board.clearSelection();
+                        dialog.dispose();
                     }
                 });
 
                 dialog.setVisible(true);
             });
             f.setVisible(true);
+            board.clearSelection();     // primer análisis
         });
     }
 }
\ No newline at end of file
@@ -0,0 +1,329 @@
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+// ==========================================================
+//              MÉTRICAS DE LOS CAMINOS CALIENTES
+// ==========================================================
+//
+// Contadores e histogramas de latencia para la API de GameState, la
+// búsqueda y el servidor. Todo son LongAdder, que reparten las sumas
+// entre celdas por hilo, así que varios hilos no compiten por una línea
+// de caché. Se activan al arrancar la JVM:
+//
+//   java -Dajedrez.metrics=true Main --server
+//
+// ENABLED es static final: con las métricas apagadas el JIT quita los
+// `if (Metrics.ENABLED)` y no cuestan nada. Encendidas, medir una llamada
+// cuesta dos System.nanoTime y varias sumas atómicas (~100 ns en una
+// máquina virtual), demasiado para la API de GameState (10-500 ns por
+// llamada). Esa se muestrea: cada GameState lleva una cuenta atrás hasta
+// la siguiente muestra (nextGap, al azar con media SAMPLE), y la llamada
+// muestreada se mide y cuenta por SAMPLE; las demás solo restan uno. Sus
+// cuentas son estimaciones, exactas en media. Las operaciones largas
+// (búsqueda, órdenes del servidor) se miden todas, y lo que va por nodo
+// de búsqueda no se mide: la búsqueda suma sus nodos al terminar.
+//
+// Los percentiles salen de un histograma logarítmico con cuatro cubos por
+// potencia de dos (se da el límite superior del cubo: error < 25 %).
+//
+// Exportación: text(), json(), la orden "metrics" de GameServer y JMX
+// (register(): objeto ajedrez:type=Metrics, un atributo por valor).
+
+public final class Metrics {
+
+    public static final boolean ENABLED = Boolean.getBoolean("ajedrez.metrics");
+
+    private Metrics() {}
+
+    /** Llamadas que representa cada muestra de una operación muestreada. */
+    public static final int SAMPLE = 64;
+
+    /**
+     * Llamadas hasta la siguiente muestra: 1 .. 2 * SAMPLE - 1 al azar
+     * (media SAMPLE). Sin periodo fijo, un bucle que repite las mismas
+     * llamadas no hace que siempre se muestree la misma.
+     */
+    static int nextGap() {
+        return 1 + ThreadLocalRandom.current().nextInt(2 * SAMPLE - 1);
+    }
+
+    /** Primera cuenta atrás de un objeto nuevo: su primera llamada entra con probabilidad 1 / SAMPLE. */
+    static int firstGap() {
+        return 1 + ThreadLocalRandom.current().nextInt(SAMPLE);
+    }
+
+    /** Contador que solo crece. */
+    public static final class Counter {
+        final String name;
+        private final LongAdder sum = new LongAdder();
+
+        Counter(String name) { this.name = name; }
+
+        public void increment()  { sum.increment(); }
+        public void add(long n)  { sum.add(n); }
+        public long sum()        { return sum.sum(); }
+    }
+
+    /** Número de llamadas y latencia en nanosegundos. */
+    public static final class Timer {
+        private static final int BUCKETS = 256;
+
+        final String name;
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder[] buckets = new LongAdder[BUCKETS];
+        private final LongAdder total = new LongAdder();
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+        Timer(String name) {
+            this.name = name;
+            for (int i = 0; i < BUCKETS; i++) buckets[i] = new LongAdder();
+        }
+
+        /** Una llamada medida. */
+        public void record(long nanos) {
+            record(nanos, 1);
+        }
+
+        /** Una muestra de duración nanos que representa weight llamadas. */
+        public void record(long nanos, int weight) {
+            calls.add(weight);
+            buckets[bucket(nanos)].increment();
+            total.add(nanos);
+            max.accumulate(nanos);
+        }
+
+        public long count() { return calls.sum(); }
+
+        /** Llamadas medidas (todas si no hay muestreo). */
+        public long samples() {
+            long n = 0;
+            for (LongAdder b : buckets) n += b.sum();
+            return n;
+        }
+
+        public long totalNanos() { return total.sum(); }
+
+        /** Máximo de las llamadas medidas. */
+        public long maxNanos()   { return max.get(); }
+
+        /** Límite superior del cubo donde cae el cuantil q (0 < q <= 1), o 0 sin datos. */
+        public long percentile(double q) {
+            long[] counts = new long[BUCKETS];
+            long n = 0;
+            for (int i = 0; i < BUCKETS; i++) n += counts[i] = buckets[i].sum();
+            if (n == 0) return 0;
+            long rank = (long) Math.ceil(q * n), seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts[i];
+                if (seen >= rank) return Math.min(upperBound(i), maxNanos());
+            }
+            return maxNanos();
+        }
+
+        // 0..3 exactos; después 4 cubos por potencia de dos
+        static int bucket(long v) {
+            if (v < 4) return (int) Math.max(v, 0);
+            int exp = 63 - Long.numberOfLeadingZeros(v);
+            return 4 * (exp - 1) + (int) ((v >>> (exp - 2)) & 3);
+        }
+
+        static long upperBound(int i) {
+            if (i < 4) return i;
+            int exp = i / 4 + 1, sub = i & 3;
+            return ((4L + sub) << (exp - 2)) + (1L << (exp - 2)) - 1;
+        }
+    }
+
+    // ==========================================================
+    //                   MÉTRICAS DEL PROGRAMA
+    // ==========================================================
+
+    // muestreadas (ver SAMPLE)
+    public static final Timer LEGAL_MOVES = new Timer("legalMoves");        // GameState.getLegalMoves
+    public static final Timer LEGAL_TARGETS = new Timer("legalTargets");    // GameState.legalTargets
+    public static final Timer IN_CHECK = new Timer("isInCheck");            // GameState.isInCheck (API)
+    public static final Timer FEN_PARSE = new Timer("fenParse");            // GameState.loadFEN
+    public static final Timer FEN_WRITE = new Timer("fenWrite");            // GameState.writeFEN y derivados
+    // exactas
+    public static final Timer SEARCH = new Timer("search");                 // Search.run, por hilo
+    public static final Counter SEARCH_NODES = new Counter("searchNodes");
+    public static final Timer SERVER_COMMAND = new Timer("serverCommand");  // una orden de GameServer
+    public static final Counter SERVER_CONNECTIONS = new Counter("serverConnections");
+
+    private static final Timer[] TIMERS = {LEGAL_MOVES, LEGAL_TARGETS, IN_CHECK, FEN_PARSE, FEN_WRITE, SEARCH, SERVER_COMMAND};
+    private static final Counter[] COUNTERS = {SEARCH_NODES, SERVER_CONNECTIONS};
+
+    // ==========================================================
+    //                       INSTANTÁNEAS
+    // ==========================================================
+
+    // Lectura anterior de la memoria asignada, para dar un ritmo
+    private static long lastAllocated = -1, lastAllocatedAt;
+    private static long allocationRate = -1;
+
+    /**
+     * Todos los valores con nombres planos ("search.p99Nanos"). nps es por
+     * hilo de búsqueda (nodos entre la suma de los tiempos de cada hilo).
+     * allocatedBytes cuenta solo los hilos vivos y allocatedBytesPerSec es
+     * el ritmo desde la instantánea anterior (-1 si la JVM no lo mide).
+     */
+    public static Map<String, Long> snapshot() {
+        Map<String, Long> m = new LinkedHashMap<>();
+        m.put("enabled", ENABLED ? 1L : 0L);
+        for (Counter c : COUNTERS) m.put(c.name, c.sum());
+        for (Timer t : TIMERS) {
+            long n = t.samples();
+            m.put(t.name + ".count", t.count());
+            m.put(t.name + ".meanNanos", n == 0 ? 0 : t.totalNanos() / n);
+            m.put(t.name + ".p50Nanos", t.percentile(0.50));
+            m.put(t.name + ".p90Nanos", t.percentile(0.90));
+            m.put(t.name + ".p99Nanos", t.percentile(0.99));
+            m.put(t.name + ".maxNanos", t.maxNanos());
+        }
+        long searchNanos = SEARCH.totalNanos();
+        m.put("search.nps", searchNanos == 0 ? 0 : (long) (SEARCH_NODES.sum() * 1e9 / searchNanos));
+        synchronized (Metrics.class) {
+            long now = System.nanoTime(), bytes = allocatedBytes();
+            // con lecturas muy seguidas se mantiene el ritmo anterior
+            if (bytes >= 0 && lastAllocated >= 0 && now - lastAllocatedAt >= 100_000_000L) {
+                allocationRate = Math.max(0, (long) ((bytes - lastAllocated) * 1e9 / (now - lastAllocatedAt)));
+            }
+            if (lastAllocated < 0 || now - lastAllocatedAt >= 100_000_000L) {
+                lastAllocated = bytes;
+                lastAllocatedAt = now;
+            }
+            m.put("allocatedBytes", bytes);
+            m.put("allocatedBytesPerSec", allocationRate);
+        }
+        return m;
+    }
+
+    // Suma de lo asignado por los hilos vivos (HotSpot: com.sun.management.ThreadMXBean)
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+        if (!(mx instanceof com.sun.management.ThreadMXBean)) return -1;
+        com.sun.management.ThreadMXBean hs = (com.sun.management.ThreadMXBean) mx;
+        if (!hs.isThreadAllocatedMemorySupported() || !hs.isThreadAllocatedMemoryEnabled()) return -1;
+        long total = 0;
+        for (long b : hs.getThreadAllocatedBytes(hs.getAllThreadIds())) {
+            if (b > 0) total += b;
+        }
+        return total;
+    }
+
+    /** Tabla legible con todas las métricas. */
+    public static String text() {
+        Map<String, Long> m = snapshot();
+        StringBuilder sb = new StringBuilder(1024);
+        if (!ENABLED) sb.append("(métricas apagadas: -Dajedrez.metrics=true)\n");
+        sb.append(String.format("%-18s %10s %10s %10s %10s %10s %10s%n",
+                "métrica", "llamadas", "media µs", "p50 µs", "p90 µs", "p99 µs", "máx µs"));
+        for (Timer t : TIMERS) {
+            sb.append(String.format("%-18s %10d %10.1f %10.1f %10.1f %10.1f %10.1f%n", t.name,
+                    m.get(t.name + ".count"), m.get(t.name + ".meanNanos") / 1e3,
+                    m.get(t.name + ".p50Nanos") / 1e3, m.get(t.name + ".p90Nanos") / 1e3,
+                    m.get(t.name + ".p99Nanos") / 1e3, m.get(t.name + ".maxNanos") / 1e3));
+        }
+        for (Counter c : COUNTERS) sb.append(String.format("%-18s %10d%n", c.name, c.sum()));
+        sb.append(String.format("nodos/s por hilo de búsqueda: %d%n", m.get("search.nps")));
+        long bytes = m.get("allocatedBytes"), rate = m.get("allocatedBytesPerSec");
+        if (bytes < 0) sb.append("memoria asignada: no disponible en esta JVM\n");
+        else sb.append(String.format("memoria asignada (hilos vivos): %.1f MB, %s%n", bytes / 1e6,
+                rate < 0 ? "ritmo en la próxima lectura" : String.format("%.1f MB/s", rate / 1e6)));
+        return sb.toString();
+    }
+
+    /** Las mismas métricas en un objeto JSON de una sola línea. */
+    public static String json() {
+        StringBuilder sb = new StringBuilder(1024).append('{');
+        for (Map.Entry<String, Long> e : snapshot().entrySet()) {
+            if (sb.length() > 1) sb.append(',');
+            sb.append('"').append(e.getKey()).append("\":").append(e.getValue());
+        }
+        return sb.append('}').toString();
+    }
+
+    // ==========================================================
+    //                           JMX
+    // ==========================================================
+
+    private static boolean registered;
+
+    /** Publica las métricas como ajedrez:type=Metrics si están activadas (una vez). */
+    public static synchronized void register() {
+        if (!ENABLED || registered) return;
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            server.registerMBean(new Bean(), new ObjectName("ajedrez:type=Metrics"));
+            registered = true;
+        } catch (JMException e) {
+            System.err.println("Metrics: no se pudo registrar en JMX: " + e.getMessage());
+        }
+    }
+
+    // Un atributo de solo lectura por cada valor de snapshot()
+    private static final class Bean implements DynamicMBean {
+        @Override
+        public Object getAttribute(String name) throws AttributeNotFoundException {
+            Long v = snapshot().get(name);
+            if (v == null) throw new AttributeNotFoundException(name);
+            return v;
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] names) {
+            Map<String, Long> m = snapshot();
+            AttributeList list = new AttributeList();
+            for (String name : names) {
+                if (m.containsKey(name)) list.add(new Attribute(name, m.get(name)));
+            }
+            return list;
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) {
+            throw new UnsupportedOperationException("métricas de solo lectura");
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();     // las que se han cambiado: ninguna
+        }
+
+        @Override
+        public Object invoke(String action, Object[] params, String[] signature) {
+            throw new UnsupportedOperationException(action);
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            Map<String, Long> m = snapshot();
+            MBeanAttributeInfo[] attrs = new MBeanAttributeInfo[m.size()];
+            int i = 0;
+            for (String name : m.keySet()) {
+                attrs[i++] = new MBeanAttributeInfo(name, "java.lang.Long", name, true, false, false);
+            }
+            return new MBeanInfo(Metrics.class.getName(), "Métricas del motor y del servidor",
+                    attrs, null, null, null);
+        }
+    }
+
+    /** Imprime text() al salir de la JVM si las métricas están activadas. */
+    public static void printOnExit() {
+        if (!ENABLED) return;
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> System.err.print(text()), "metrics-exit"));
+    }
+}
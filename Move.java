@@ -0,0 +1,52 @@
+// ==========================================================
+//                 JUGADA EMPAQUETADA EN UN INT
+// ==========================================================
+//
+//   bits  0-5   casilla origen  (fila * 8 + columna)
+//   bits  6-11  casilla destino
+//   bits 12-14  pieza de promoción sin color (WN..WQ = 1..4), 0 = ninguna
+//   bits 15-..  banderas
+//
+// Un int nunca es 0 para una jugada real salvo a8-a8, que no existe,
+// así que 0 sirve como "sin jugada".
+
+public final class Move {
+
+    public static final int NONE = 0;
+
+    public static final int CAPTURE     = 1 << 15;
+    public static final int DOUBLE_PUSH = 1 << 16;
+    public static final int EN_PASSANT  = 1 << 17;   // siempre junto con CAPTURE
+    public static final int CASTLE      = 1 << 18;   // jugada del rey; la torre se deduce
+
+    private Move() {}
+
+    public static int of(int from, int to, int flags) {
+        return from | (to << 6) | flags;
+    }
+
+    public static int promote(int from, int to, int pieceType, int flags) {
+        return from | (to << 6) | (pieceType << 12) | flags;
+    }
+
+    public static int from(int move)      { return move & 63; }
+    public static int to(int move)        { return (move >>> 6) & 63; }
+    public static int promotion(int move) { return (move >>> 12) & 7; }
+
+    public static boolean isCapture(int move)   { return (move & CAPTURE) != 0; }
+    public static boolean isPromotion(int move) { return (move & (7 << 12)) != 0; }
+    public static boolean isEnPassant(int move) { return (move & EN_PASSANT) != 0; }
+    public static boolean isCastle(int move)    { return (move & CASTLE) != 0; }
+
+    /** Nombre algebraico de una casilla: 0 -> "a8", 63 -> "h1". */
+    public static String squareName(int sq) {
+        return "" + (char) ('a' + (sq & 7)) + (char) ('8' - (sq >> 3));
+    }
+
+    /** Notación UCI: "e2e4", "e7e8q". */
+    public static String toUci(int move) {
+        String s = squareName(from(move)) + squareName(to(move));
+        int promo = promotion(move);
+        return promo == 0 ? s : s + "pnbrqk".charAt(promo);
+    }
+}
@@ -0,0 +1,92 @@
+// ==========================================================
+//          BENCHMARK DE GENERACIÓN DE MOVIMIENTOS
+// ==========================================================
+//
+// Mide, sobre un conjunto fijo de posiciones:
+//   1) getLegalMoves (todas las casillas) + isInCheck (ambos reyes), la API
+//      de listas que usa la interfaz;
+//   2) generateMoves sobre un buffer de ints reutilizado, sin asignaciones.
+//
+//   javac *.java && java MoveGenBenchmark [segundos]
+
+public class MoveGenBenchmark {
+
+    static final String[] FENS = {
+            "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",
+            "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+            "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+            "r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1",
+            "rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8",
+            "r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10"
+    };
+
+    public static void main(String[] args) throws Exception {
+        double seconds = args.length > 0 ? Double.parseDouble(args[0]) : 5.0;
+
+        GameState[] states = new GameState[FENS.length * 2];
+        for (int i = 0; i < FENS.length; i++) {
+            for (int side = 0; side < 2; side++) {
+                GameState g = new GameState();
+                g.loadFEN(FENS[i]);
+                g.whiteTurn = side == 0;
+                states[i * 2 + side] = g;
+            }
+        }
+
+        System.out.println("Calentando...");
+        run(states, seconds / 2);
+
+        long t0 = System.nanoTime();
+        long[] result = run(states, seconds);
+        double elapsed = (System.nanoTime() - t0) / 1e9;
+
+        long positions = result[0];
+        System.out.printf("posiciones: %d en %.2f s%n", positions, elapsed);
+        System.out.printf("%.0f posiciones/s, %.1f ns por posición (64 x getLegalMoves + 2 x isInCheck)%n",
+                positions / elapsed, elapsed * 1e9 / positions);
+        System.out.printf("%.0f movimientos generados/s (checksum %d)%n", result[1] / elapsed, result[2]);
+
+        System.out.println("generateMoves con buffer reutilizado:");
+        runBuffer(states, seconds / 2);
+        t0 = System.nanoTime();
+        result = runBuffer(states, seconds);
+        elapsed = (System.nanoTime() - t0) / 1e9;
+        System.out.printf("%.0f posiciones/s, %.1f ns por posición, %.0f movimientos/s%n",
+                result[0] / elapsed, elapsed * 1e9 / result[0], result[1] / elapsed);
+    }
+
+    private static long[] runBuffer(GameState[] states, double seconds) {
+        int[] buffer = new int[GameState.MAX_MOVES];
+        long deadline = System.nanoTime() + (long) (seconds * 1e9);
+        long positions = 0, moves = 0;
+        while (System.nanoTime() < deadline) {
+            for (int rep = 0; rep < 1000; rep++) {
+                for (GameState g : states) {
+                    moves += g.generateMoves(buffer, 0);
+                    positions++;
+                }
+            }
+        }
+        return new long[]{positions, moves};
+    }
+
+    private static long[] run(GameState[] states, double seconds) {
+        long deadline = System.nanoTime() + (long) (seconds * 1e9);
+        long positions = 0, moves = 0, checks = 0;
+        while (System.nanoTime() < deadline) {
+            for (int rep = 0; rep < 100; rep++) {
+                for (GameState g : states) {
+                    for (int r = 0; r < 8; r++) {
+                        for (int c = 0; c < 8; c++) {
+                            moves += g.getLegalMoves(r, c).size();
+                        }
+                    }
+                    if (g.isInCheck(true)) checks++;
+                    if (g.isInCheck(false)) checks++;
+                    positions++;
+                }
+            }
+        }
+        return new long[]{positions, moves, checks};
+    }
+}
@@ -0,0 +1,182 @@
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// ==========================================================
+//                    LIBRO DE APERTURAS
+// ==========================================================
+//
+// Archivo ordenado por (clave Zobrist, jugada) y proyectado en memoria:
+//
+//   cabecera  MAGIC (8) | VERSION (4) | entradas (4)
+//   entrada   clave (8) | jugada de 16 bits (2) | 0 (2)
+//             | victorias blancas (4) | tablas (4) | victorias negras (4)
+//
+// find() es una búsqueda binaria sin crear objetos; las entradas de una
+// posición son contiguas, así que se recorren con los accesores por
+// índice. Las lecturas son absolutas: un libro se comparte entre hilos.
+
+public final class OpeningBook implements AutoCloseable {
+
+    static final long MAGIC = 0x43484553_53424B31L;       // "CHESSBK1"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 16;
+    static final int ENTRY_BYTES = 24;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buf;
+    private final int count;
+
+    public OpeningBook(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        long size = channel.size();
+        if (size < HEADER_BYTES || size > Integer.MAX_VALUE) {
+            channel.close();
+            throw new IOException("OpeningBook: tamaño incorrecto");
+        }
+        buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        if (buf.getLong(0) != MAGIC || buf.getInt(8) != VERSION
+                || HEADER_BYTES + (long) buf.getInt(12) * ENTRY_BYTES != size) {
+            channel.close();
+            throw new IOException("OpeningBook: no es un libro de aperturas");
+        }
+        count = buf.getInt(12);
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /** Primera entrada de la posición con esta clave o -1 si no está en el libro. */
+    public int find(long key) {
+        int lo = 0, hi = count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (key(mid) < key) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo < count && key(lo) == key ? lo : -1;
+    }
+
+    /** Número de jugadas del libro en la posición (entradas desde find(key)). */
+    public int moveCount(long key) {
+        int first = find(key);
+        if (first < 0) return 0;
+        int i = first;
+        while (i < count && key(i) == key) i++;
+        return i - first;
+    }
+
+    // accesores por índice de entrada
+    public long key(int i)      { return buf.getLong(HEADER_BYTES + i * ENTRY_BYTES); }
+    public int rawMove(int i)   { return buf.getShort(HEADER_BYTES + i * ENTRY_BYTES + 8) & 0xFFFF; }
+    public int whiteWins(int i) { return buf.getInt(HEADER_BYTES + i * ENTRY_BYTES + 12); }
+    public int draws(int i)     { return buf.getInt(HEADER_BYTES + i * ENTRY_BYTES + 16); }
+    public int blackWins(int i) { return buf.getInt(HEADER_BYTES + i * ENTRY_BYTES + 20); }
+    public int games(int i)     { return whiteWins(i) + draws(i) + blackWins(i); }
+
+    /** Jugada completa de la entrada i, que debe ser de la posición pos. */
+    public int move(int i, GameState pos) {
+        return GameStore.decode(pos, rawMove(i));
+    }
+
+    /**
+     * Elige una jugada del libro con probabilidad proporcional a las veces
+     * que se jugó; random es cualquier valor aleatorio de 64 bits.
+     * Devuelve Move.NONE si la posición no está en el libro.
+     */
+    public int pick(GameState pos, long random) {
+        long key = pos.getKey();
+        int first = find(key);
+        if (first < 0) return Move.NONE;
+        long total = 0;
+        int end = first;
+        for (; end < count && key(end) == key; end++) total += games(end);
+        long target = Long.remainderUnsigned(random, total);
+        for (int i = first; i < end; i++) {
+            target -= games(i);
+            if (target < 0) return move(i, pos);
+        }
+        return move(end - 1, pos);
+    }
+
+    /** Jugada más jugada en la posición o Move.NONE. */
+    public int best(GameState pos) {
+        long key = pos.getKey();
+        int first = find(key);
+        if (first < 0) return Move.NONE;
+        int best = first;
+        for (int i = first + 1; i < count && key(i) == key; i++) {
+            if (games(i) > games(best)) best = i;
+        }
+        return move(best, pos);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    // ==========================================================
+    //                      LÍNEA DE COMANDOS
+    // ==========================================================
+    //
+    //   java OpeningBook build <partidas.pgn|.cdb> <libro.book> [jugadas] [mínimo]
+    //   java OpeningBook probe <libro.book> [fen]
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.out.println("Uso: java OpeningBook build|probe ...");
+            return;
+        }
+        if (args[0].equals("build")) {
+            int maxPly = args.length > 3 ? Integer.parseInt(args[3]) : 20;
+            int minGames = args.length > 4 ? Integer.parseInt(args[4]) : 1;
+            OpeningBookBuilder builder = new OpeningBookBuilder(maxPly);
+            Path in = Path.of(args[1]);
+            long t0 = System.nanoTime();
+            if (in.toString().endsWith(".pgn")) {
+                PgnReader.readFile(in, game -> {
+                    try {
+                        builder.add(game);
+                    } catch (FenException e) {
+                        throw new IllegalStateException(e);
+                    }
+                });
+            } else {
+                try (GameStore store = new GameStore(in)) {
+                    for (int g = 0; g < store.size(); g++) builder.add(store, g);
+                }
+            }
+            int written = builder.write(Path.of(args[2]), minGames);
+            System.out.printf("%d partidas, %d entradas (%d escritas) en %.2f s%n",
+                    builder.games(), builder.entries(), written, (System.nanoTime() - t0) / 1e9);
+            return;
+        }
+
+        try (OpeningBook book = new OpeningBook(Path.of(args[1]))) {
+            GameState pos = new GameState();
+            if (args.length > 2) pos.loadFEN(args[2]);
+            long key = pos.getKey();
+            int first = book.find(key);
+            if (first < 0) {
+                System.out.println("Posición fuera del libro");
+                return;
+            }
+            San san = new San();
+            System.out.printf("%-8s %8s %8s %8s %8s%n", "jugada", "partidas", "blancas", "tablas", "negras");
+            for (int i = first; i < book.size() && book.key(i) == key; i++) {
+                System.out.printf("%-8s %8d %8d %8d %8d%n", san.toSan(pos, book.move(i, pos)),
+                        book.games(i), book.whiteWins(i), book.draws(i), book.blackWins(i));
+            }
+
+            // coste de una consulta
+            int lookups = 1_000_000;
+            long sink = 0, t0 = System.nanoTime();
+            for (int i = 0; i < lookups; i++) sink += book.find(key ^ (i & 1));
+            System.out.printf("%.0f ns por consulta (%d)%n", (System.nanoTime() - t0) / (double) lookups, sink & 1);
+        }
+    }
+}
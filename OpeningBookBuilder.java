@@ -0,0 +1,178 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+// ==========================================================
+//               CONSTRUCCIÓN DEL LIBRO DE APERTURAS
+// ==========================================================
+//
+// Recorre partidas con GameState y, para cada posición de las primeras
+// maxPly jugadas, cuenta las jugadas hechas y su resultado (victorias
+// blancas, tablas, victorias negras). Los contadores viven en una tabla
+// hash abierta indexada por (clave Zobrist, jugada de 16 bits); al final
+// se ordenan y se escriben en el formato de OpeningBook.
+
+public final class OpeningBookBuilder {
+
+    private final int maxPly;
+    private final GameState work = new GameState();
+
+    // tabla abierta: una celda libre tiene total == 0
+    private long[] keys = new long[1 << 16];
+    private int[] moves = new int[1 << 16];
+    private int[][] counts = new int[3][1 << 16];      // por resultado de PgnGame: [WHITE_WINS, BLACK_WINS, DRAW]
+    private int size;
+    private long games;
+
+    public OpeningBookBuilder(int maxPly) {
+        this.maxPly = maxPly;
+    }
+
+    public long games() { return games; }
+    public int entries() { return size; }
+
+    /** Añade la partida; las de resultado desconocido no cuentan. */
+    public void add(PgnGame game) throws FenException {
+        if (game.result == PgnGame.UNKNOWN) return;
+        game.start(work);
+        int n = Math.min(maxPly, game.length());
+        for (int i = 0; i < n; i++) {
+            int move = game.moveAt(i);
+            count(work.getKey(), GameStoreWriter.encode(move), game.result);
+            work.makeMove(move);
+        }
+        games++;
+    }
+
+    /** Añade la partida número game del almacén. */
+    public void add(GameStore store, int game) {
+        int result = store.result(game);
+        if (result == PgnGame.UNKNOWN) return;
+        store.position(game, 0, work);
+        int n = Math.min(maxPly, store.moveCount(game));
+        for (int i = 0; i < n; i++) {
+            int raw = store.rawMove(game, i);
+            count(work.getKey(), raw, result);
+            work.makeMove(GameStore.decode(work, raw));
+        }
+        games++;
+    }
+
+    private void count(long key, int move, int result) {
+        if (2 * (size + 1) > keys.length) grow();
+        int mask = keys.length - 1;
+        int i = slot(key, move, mask);
+        while (total(i) != 0 && (keys[i] != key || moves[i] != move)) i = (i + 1) & mask;
+        if (total(i) == 0) {
+            keys[i] = key;
+            moves[i] = move;
+            size++;
+        }
+        counts[result][i]++;
+    }
+
+    private static int slot(long key, int move, int mask) {
+        long h = (key ^ (move * 0x9E3779B97F4A7C15L)) * 0xBF58476D1CE4E5B9L;
+        return (int) (h >>> 32) & mask;
+    }
+
+    private int total(int i) {
+        return counts[0][i] + counts[1][i] + counts[2][i];
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldMoves = moves;
+        int[][] old = counts;
+        int cap = oldKeys.length * 2;
+        keys = new long[cap];
+        moves = new int[cap];
+        counts = new int[3][cap];
+        int mask = cap - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (old[0][j] + old[1][j] + old[2][j] == 0) continue;
+            int i = slot(oldKeys[j], oldMoves[j], mask);
+            while (total(i) != 0) i = (i + 1) & mask;
+            keys[i] = oldKeys[j];
+            moves[i] = oldMoves[j];
+            for (int r = 0; r < 3; r++) counts[r][i] = old[r][j];
+        }
+    }
+
+    // ==========================================================
+    //                        ESCRITURA
+    // ==========================================================
+
+    /** Escribe el libro con las jugadas jugadas al menos minGames veces. */
+    public int write(Path file, int minGames) throws IOException {
+        // índices de las celdas usadas, ordenados por (clave, jugada)
+        int[] order = new int[size];
+        int n = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (total(i) >= Math.max(1, minGames)) order[n++] = i;
+        }
+        sort(order, 0, n - 1);
+
+        Path tmp = file.resolveSibling(file.getFileName() + ".part");
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer out = ByteBuffer.allocate(1 << 16);
+            out.putLong(OpeningBook.MAGIC).putInt(OpeningBook.VERSION).putInt(n);
+            for (int k = 0; k < n; k++) {
+                if (out.remaining() < OpeningBook.ENTRY_BYTES) drain(ch, out);
+                int i = order[k];
+                out.putLong(keys[i]).putShort((short) moves[i]).putShort((short) 0)
+                        .putInt(counts[PgnGame.WHITE_WINS][i])
+                        .putInt(counts[PgnGame.DRAW][i])
+                        .putInt(counts[PgnGame.BLACK_WINS][i]);
+            }
+            drain(ch, out);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return n;
+    }
+
+    private static void drain(FileChannel ch, ByteBuffer out) throws IOException {
+        out.flip();
+        while (out.hasRemaining()) ch.write(out);
+        out.clear();
+    }
+
+    private boolean less(int a, int b) {
+        return keys[a] < keys[b] || (keys[a] == keys[b] && moves[a] < moves[b]);
+    }
+
+    private void sort(int[] order, int lo, int hi) {
+        while (hi - lo > 16) {
+            int p = order[(lo + hi) >>> 1];
+            int i = lo, j = hi;
+            while (i <= j) {
+                while (less(order[i], p)) i++;
+                while (less(p, order[j])) j--;
+                if (i <= j) {
+                    int t = order[i];
+                    order[i++] = order[j];
+                    order[j--] = t;
+                }
+            }
+            if (j - lo < hi - i) {
+                sort(order, lo, j);
+                lo = i;
+            } else {
+                sort(order, i, hi);
+                hi = j;
+            }
+        }
+        for (int i = lo + 1; i <= hi; i++) {
+            for (int j = i; j > lo && less(order[j], order[j - 1]); j--) {
+                int t = order[j];
+                order[j] = order[j - 1];
+                order[j - 1] = t;
+            }
+        }
+    }
+}
@@ -0,0 +1,144 @@
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// ==========================================================
+//              BÚSQUEDA PARALELA (LAZY SMP)
+// ==========================================================
+//
+// N hilos buscan la misma raíz, cada uno con su propia copia de la
+// posición y sus jugadas asesinas, y comparten una única tabla de
+// transposición. Los ayudantes arrancan en profundidades alternas para
+// no recorrer el árbol al mismo ritmo; lo que escriben en la tabla
+// acelera al hilo principal, cuyo resultado es el que se devuelve.
+//
+// Arranque y parada deterministas: start() deja todos los hilos listos
+// antes de lanzarlos, stop() los detiene a todos y awaitResult() no
+// vuelve hasta que el último ha terminado.
+
+public final class ParallelSearch implements AutoCloseable {
+
+    private final TranspositionTable tt;
+    private final Search[] workers;
+    private final ExecutorService pool;
+    private final Future<?>[] running;
+    private final Search.Result[] results;
+
+    public ParallelSearch(TranspositionTable tt, int threads) {
+        this(tt, threads, DefaultEvaluator::new);
+    }
+
+    /** evaluators da una evaluación nueva para cada hilo. */
+    public ParallelSearch(TranspositionTable tt, int threads, java.util.function.Supplier<? extends Evaluator> evaluators) {
+        if (threads < 1) throw new IllegalArgumentException("ParallelSearch: al menos 1 hilo");
+        this.tt = tt;
+        workers = new Search[threads];
+        for (int i = 0; i < threads; i++) workers[i] = new Search(tt, evaluators.get());
+        running = new Future<?>[threads];
+        results = new Search.Result[threads];
+        pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "lazy-smp");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public int threads() {
+        return workers.length;
+    }
+
+    /** Búsqueda síncrona: start + awaitResult. */
+    public Search.Result search(GameState root, int maxDepth, long timeMs) {
+        start(root, maxDepth, timeMs);
+        return awaitResult();
+    }
+
+    /** Lanza la búsqueda en todos los hilos y vuelve enseguida. */
+    public synchronized void start(GameState root, int maxDepth, long timeMs) {
+        for (Future<?> f : running) {
+            if (f != null && !f.isDone()) throw new IllegalStateException("ParallelSearch: búsqueda en curso");
+        }
+        long now = System.nanoTime();
+        long deadline = timeMs > 0 ? now + timeMs * 1_000_000L : Long.MAX_VALUE;
+        GameState snapshot = new GameState(root);   // root puede cambiar mientras buscamos
+
+        tt.newSearch();
+        for (Search w : workers) w.prepare();
+        java.util.Arrays.fill(results, null);
+
+        for (int i = 0; i < workers.length; i++) {
+            final int id = i;
+            int firstDepth = 1 + (id & 1);
+            running[i] = pool.submit(() -> {
+                results[id] = workers[id].run(snapshot, maxDepth, deadline, firstDepth);
+                // cuando el principal termina, los ayudantes ya no aportan nada
+                if (id == 0) stopHelpers();
+            });
+        }
+    }
+
+    /** Listener de las iteraciones del hilo principal (los nodos son solo los suyos). */
+    public void setListener(Search.Listener listener) {
+        workers[0].setListener(listener);
+    }
+
+    /** Detiene todos los hilos; la búsqueda devuelve lo último completado. */
+    public void stop() {
+        for (Search w : workers) w.stop();
+    }
+
+    private void stopHelpers() {
+        for (int i = 1; i < workers.length; i++) workers[i].stop();
+    }
+
+    /**
+     * Espera a que terminen todos los hilos y devuelve el resultado del
+     * principal con los nodos sumados de todos.
+     */
+    public Search.Result awaitResult() {
+        // Una interrupción solo adelanta el final: se para y se sigue
+        // esperando, porque results solo es visible tras el get() de cada hilo
+        boolean interrupted = false;
+        Throwable failure = null;
+        for (Future<?> f : running) {
+            if (f == null) continue;
+            while (true) {
+                try {
+                    f.get();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                    stop();
+                } catch (ExecutionException e) {
+                    if (failure == null) failure = e.getCause();
+                    stop();
+                    break;
+                }
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+        if (failure != null) throw new IllegalStateException("ParallelSearch: fallo en un hilo", failure);
+
+        Search.Result main = results[0];
+        if (main == null) return null;
+        long nodes = 0;
+        for (Search.Result r : results) {
+            if (r != null) nodes += r.nodes;
+        }
+        return new Search.Result(main.bestMove, main.score, main.depth, nodes, main.millis, main.pv);
+    }
+
+    /** Nodos visitados hasta ahora por todos los hilos (aproximado durante la búsqueda). */
+    public long getNodes() {
+        long nodes = 0;
+        for (Search w : workers) nodes += w.getNodes();
+        return nodes;
+    }
+
+    @Override
+    public void close() {
+        stop();
+        pool.shutdownNow();
+    }
+}
@@ -0,0 +1,150 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+// ==========================================================
+//                  PERFT (CONTEO DE NODOS)
+// ==========================================================
+//
+// Cuenta las hojas del árbol de jugadas legales hasta la profundidad N.
+// Sirve para verificar el generador contra valores conocidos y para medir
+// su velocidad. "divide" desglosa el total por jugada raíz.
+//
+//   java Perft "<fen>" <profundidad> [hilos]
+
+public final class Perft {
+
+    /** Resultado de divide: una fila por jugada raíz. */
+    public static final class Divide {
+        public final int[] moves;
+        public final long[] nodes;
+        public final long total;
+
+        Divide(int[] moves, long[] nodes) {
+            this.moves = moves;
+            this.nodes = nodes;
+            long t = 0;
+            for (long n : nodes) t += n;
+            this.total = t;
+        }
+    }
+
+    // Una sola posición con hacer/deshacer y un buffer de jugadas por ply:
+    // la búsqueda no copia tableros ni asigna memoria.
+    private final GameState position = new GameState();
+    private final int[][] moves;
+
+    public Perft(int maxDepth) {
+        moves = new int[maxDepth + 1][GameState.MAX_MOVES];
+    }
+
+    /** Hojas a la profundidad indicada desde root (root no se modifica). */
+    public long perft(GameState root, int depth) {
+        if (depth <= 0) return 1;
+        position.copyFrom(root);
+        return count(0, depth);
+    }
+
+    private long count(int ply, int depth) {
+        int[] buf = moves[ply];
+        int n = position.generateMoves(buf, 0);
+        if (depth == 1) return n;   // el generador ya es estrictamente legal
+
+        long nodes = 0;
+        for (int i = 0; i < n; i++) {
+            position.makeMove(buf[i]);
+            nodes += count(ply + 1, depth - 1);
+            position.unmakeMove();
+        }
+        return nodes;
+    }
+
+    // ==========================================================
+    //            DIVIDE EN PARALELO (FORK-JOIN)
+    // ==========================================================
+
+    /** Divide con las jugadas raíz repartidas en el pool común. */
+    public static Divide divide(GameState root, int depth) {
+        return divide(root, depth, ForkJoinPool.commonPool());
+    }
+
+    public static Divide divide(GameState root, int depth, ForkJoinPool pool) {
+        if (depth < 1) throw new IllegalArgumentException("divide: profundidad mínima 1");
+
+        int[] buf = new int[GameState.MAX_MOVES];
+        int n = root.generateMoves(buf, 0);
+
+        List<RootTask> tasks = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            GameState child = new GameState(root);
+            child.makeMove(buf[i]);
+            tasks.add(new RootTask(buf[i], child, depth - 1));
+        }
+
+        pool.invoke(new RecursiveTask<Void>() {
+            @Override
+            protected Void compute() {
+                invokeAll(tasks);
+                return null;
+            }
+        });
+
+        int[] rootMoves = new int[tasks.size()];
+        long[] nodes = new long[tasks.size()];
+        for (int i = 0; i < tasks.size(); i++) {
+            rootMoves[i] = tasks.get(i).move;
+            nodes[i] = tasks.get(i).join();
+        }
+        return new Divide(rootMoves, nodes);
+    }
+
+    private static final class RootTask extends RecursiveTask<Long> {
+        private static final long serialVersionUID = 1L;
+
+        final int move;
+        final GameState position;
+        final int depth;
+
+        RootTask(int move, GameState position, int depth) {
+            this.move = move;
+            this.position = position;
+            this.depth = depth;
+        }
+
+        @Override
+        protected Long compute() {
+            return new Perft(depth).perft(position, depth);
+        }
+    }
+
+    // ==========================================================
+    //                      LÍNEA DE COMANDOS
+    // ==========================================================
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.out.println("Uso: java Perft \"<fen>\" <profundidad> [hilos]");
+            return;
+        }
+        GameState g = new GameState();
+        g.loadFEN(args[0]);
+        int depth = Integer.parseInt(args[1]);
+        ForkJoinPool pool = args.length > 2
+                ? new ForkJoinPool(Integer.parseInt(args[2]))
+                : ForkJoinPool.commonPool();
+
+        long t0 = System.nanoTime();
+        Divide d = divide(g, depth, pool);
+        double seconds = (System.nanoTime() - t0) / 1e9;
+
+        for (int i = 0; i < d.moves.length; i++) {
+            System.out.println(Move.toUci(d.moves[i]) + ": " + d.nodes[i]);
+        }
+        System.out.println();
+        System.out.println("Jugadas: " + d.moves.length);
+        System.out.println("Nodos:   " + d.total);
+        System.out.printf("Tiempo:  %.3f s (%.0f nodos/s, %d hilos)%n",
+                seconds, d.total / seconds, pool.getParallelism());
+    }
+}
@@ -0,0 +1,65 @@
+import java.util.concurrent.ForkJoinPool;
+
+// ==========================================================
+//       BENCHMARK DE PERFT (NODOS/S EN POSICIONES ESTÁNDAR)
+// ==========================================================
+//
+// Arnés al estilo JMH sin dependencias: por cada posición ejecuta
+// iteraciones de calentamiento y de medición, informa la media y la
+// desviación de nodos/s y comprueba el conteo contra el valor publicado.
+// Termina con código 1 si algún conteo no coincide, para usarlo como
+// control de regresión tras cualquier cambio del generador.
+//
+//   java PerftBenchmark [calentamiento] [mediciones] [hilos]
+
+public class PerftBenchmark {
+
+    // FEN, profundidad, nodos esperados
+    static final Object[][] POSITIONS = {
+            {"rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1", 5, 4865609L},
+            {"r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1", 4, 4085603L},
+            {"8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1", 5, 674624L},
+            {"r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1", 4, 422333L},
+            {"rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8", 4, 2103487L},
+            {"r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10", 4, 3894594L}
+    };
+
+    public static void main(String[] args) throws Exception {
+        int warmup = args.length > 0 ? Integer.parseInt(args[0]) : 2;
+        int measure = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+
+        boolean ok = true;
+        System.out.printf("%-8s %5s %12s %14s %10s  %s%n", "pos", "prof", "nodos", "nodos/s", "±", "estado");
+
+        for (int p = 0; p < POSITIONS.length; p++) {
+            GameState g = new GameState();
+            g.loadFEN((String) POSITIONS[p][0]);
+            int depth = (Integer) POSITIONS[p][1];
+            long expected = (Long) POSITIONS[p][2];
+
+            long nodes = 0;
+            for (int i = 0; i < warmup; i++) nodes = Perft.divide(g, depth, pool).total;
+
+            double[] nps = new double[measure];
+            for (int i = 0; i < measure; i++) {
+                long t0 = System.nanoTime();
+                nodes = Perft.divide(g, depth, pool).total;
+                nps[i] = nodes / ((System.nanoTime() - t0) / 1e9);
+            }
+
+            double mean = 0, var = 0;
+            for (double v : nps) mean += v / measure;
+            for (double v : nps) var += (v - mean) * (v - mean) / Math.max(1, measure - 1);
+
+            boolean match = nodes == expected;
+            ok &= match;
+            System.out.printf("%-8s %5d %12d %14.0f %10.0f  %s%n", "#" + (p + 1), depth, nodes, mean,
+                    Math.sqrt(var), match ? "OK" : "ERROR (esperado " + expected + ")");
+        }
+
+        pool.shutdown();
+        if (!ok) System.exit(1);
+    }
+}
@@ -0,0 +1,124 @@
+import java.util.Arrays;
+
+// ==========================================================
+//                  PARTIDA LEÍDA DE UN PGN
+// ==========================================================
+//
+// Etiquetas, posición de partida (FEN o inicial), jugadas como ints de
+// Move y resultado. PgnReader reutiliza el mismo objeto para todas las
+// partidas: copy() si hay que guardarla.
+
+public final class PgnGame {
+
+    public static final int WHITE_WINS = 0, BLACK_WINS = 1, DRAW = 2, UNKNOWN = 3;
+    private static final String[] RESULT_TEXT = {"1-0", "0-1", "1/2-1/2", "*"};
+
+    private String[] tagNames = new String[16];
+    private String[] tagValues = new String[16];
+    private int tagCount;
+
+    private int[] moves = new int[256];
+    private int length;
+
+    /** FEN de la posición de partida o null para la inicial. */
+    public String startFen;
+    public int result = UNKNOWN;
+    /** Línea del archivo donde empieza la partida. */
+    public long line;
+
+    public void clear() {
+        tagCount = 0;
+        length = 0;
+        startFen = null;
+        result = UNKNOWN;
+        line = 0;
+    }
+
+    // ==========================================================
+    //                        ETIQUETAS
+    // ==========================================================
+
+    public int tagCount() { return tagCount; }
+    public String tagName(int i) { return tagNames[i]; }
+    public String tagValue(int i) { return tagValues[i]; }
+
+    public String getTag(String name) {
+        for (int i = 0; i < tagCount; i++) {
+            if (tagNames[i].equals(name)) return tagValues[i];
+        }
+        return null;
+    }
+
+    /** Cambia el valor de la etiqueta o la añade al final. */
+    public void setTag(String name, String value) {
+        for (int i = 0; i < tagCount; i++) {
+            if (tagNames[i].equals(name)) {
+                tagValues[i] = value;
+                return;
+            }
+        }
+        if (tagCount == tagNames.length) {
+            tagNames = Arrays.copyOf(tagNames, tagCount * 2);
+            tagValues = Arrays.copyOf(tagValues, tagCount * 2);
+        }
+        tagNames[tagCount] = name;
+        tagValues[tagCount++] = value;
+    }
+
+    // ==========================================================
+    //                         JUGADAS
+    // ==========================================================
+
+    public int length() { return length; }
+    public int moveAt(int i) { return moves[i]; }
+
+    public void addMove(int move) {
+        if (length == moves.length) moves = Arrays.copyOf(moves, length * 2);
+        moves[length++] = move;
+    }
+
+    /** Deja en target la posición de partida. */
+    public void start(GameState target) throws FenException {
+        if (startFen == null) target.resetBoard();
+        else target.loadFEN(startFen);
+    }
+
+    /** Deja en target la posición tras las primeras ply jugadas. */
+    public void replay(GameState target, int ply) throws FenException {
+        start(target);
+        for (int i = 0; i < ply; i++) target.play(moves[i]);
+    }
+
+    // ==========================================================
+    //                        RESULTADO
+    // ==========================================================
+
+    public static String resultText(int result) {
+        return RESULT_TEXT[result];
+    }
+
+    /** Código de resultado de "1-0", "0-1", "1/2-1/2" o "*"; -1 si no es ninguno. */
+    public static int parseResult(CharSequence s, int start, int end) {
+        for (int r = 0; r < RESULT_TEXT.length; r++) {
+            String t = RESULT_TEXT[r];
+            if (end - start != t.length()) continue;
+            int i = 0;
+            while (i < t.length() && s.charAt(start + i) == t.charAt(i)) i++;
+            if (i == t.length()) return r;
+        }
+        return -1;
+    }
+
+    public PgnGame copy() {
+        PgnGame g = new PgnGame();
+        g.tagNames = tagNames.clone();
+        g.tagValues = tagValues.clone();
+        g.tagCount = tagCount;
+        g.moves = Arrays.copyOf(moves, Math.max(1, length));
+        g.length = length;
+        g.startFen = startFen;
+        g.result = result;
+        g.line = line;
+        return g;
+    }
+}
@@ -0,0 +1,376 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// ==========================================================
+//              LECTOR DE PGN EN FLUJO (BASES GRANDES)
+// ==========================================================
+//
+// Recorre los bytes de un ByteBuffer o de un archivo proyectado y entrega
+// cada partida al consumidor en un PgnGame reutilizado. Las jugadas SAN se
+// resuelven contra las legales de la posición (San), así que cada partida
+// entregada es legal de principio a fin. Comentarios { } y ;, variantes
+// ( ), NAG $n y números de jugada se saltan.
+//
+// Una partida con una jugada ilegal o un FEN incorrecto no se entrega:
+// se avisa con Consumer.error y se sigue con la siguiente.
+//
+// En modo paralelo el archivo se corta en lotes por inicios de partida
+// (línea en blanco seguida de '[') y cada hilo tiene su propio lector.
+
+public final class PgnReader {
+
+    /** Recibe cada partida; game se reutiliza en la siguiente. */
+    @FunctionalInterface
+    public interface Consumer {
+        void accept(PgnGame game);
+
+        /** Partida descartada por un error en la línea indicada. */
+        default void error(long line, String message) {
+        }
+    }
+
+    private static final long MAX_CHUNK = 1L << 30;
+
+    private final PgnGame game = new PgnGame();
+    private final GameState position = new GameState();
+    private final San san = new San();
+    private final int[] board = new int[64];
+    private final int[] fields = new int[5];
+    private final ByteChars chars = new ByteChars();
+    private byte[] text = new byte[256];
+
+    // estado de la partida en curso
+    private boolean inGame, inMoves, skipping;
+    private long plies;
+
+    /** Jugadas (medias) de todas las partidas entregadas por este lector. */
+    public long getPlies() {
+        return plies;
+    }
+
+    /**
+     * Lee las partidas de buf entre position() y limit(). firstLine es el
+     * número de la primera línea. Devuelve las partidas entregadas.
+     */
+    public long read(ByteBuffer buf, long firstLine, Consumer consumer) {
+        chars.buf = buf;
+        int end = buf.limit();
+        long line = firstLine;
+        long games = 0;
+        inGame = inMoves = skipping = false;
+        int i = buf.position();
+
+        while (i < end) {
+            int ch = buf.get(i);
+
+            if (ch == '\n') {
+                line++;
+                i++;
+            } else if (ch == ' ' || ch == '\t' || ch == '\r') {
+                i++;
+            } else if (ch == '[') {
+                if (inMoves) games += finish(consumer);
+                if (!inGame) begin(line);
+                i = tag(buf, i, end, line, consumer);
+            } else if (ch == '{') {
+                while (i < end && buf.get(i) != '}') {
+                    if (buf.get(i) == '\n') line++;
+                    i++;
+                }
+                i++;
+            } else if (ch == ';' || (ch == '%' && (i == 0 || buf.get(i - 1) == '\n'))) {
+                while (i < end && buf.get(i) != '\n') i++;
+            } else if (ch == '(') {
+                // variante, quizá anidada y con comentarios dentro
+                int depth = 0;
+                boolean comment = false;
+                for (; i < end; i++) {
+                    int c = buf.get(i);
+                    if (c == '\n') line++;
+                    else if (comment) comment = c != '}';
+                    else if (c == '{') comment = true;
+                    else if (c == '(') depth++;
+                    else if (c == ')' && --depth == 0) break;
+                }
+                i++;
+            } else {
+                int tokenEnd = i;
+                while (tokenEnd < end && !isDelimiter(buf.get(tokenEnd))) tokenEnd++;
+                if (tokenEnd == i) tokenEnd++;          // ')' ']' o '}' sueltos
+                games += token(i, tokenEnd, line, consumer);
+                i = tokenEnd;
+            }
+        }
+        if (inGame) games += finish(consumer);
+        return games;
+    }
+
+    private static boolean isDelimiter(int ch) {
+        return ch == ' ' || ch == '\n' || ch == '\r' || ch == '\t'
+                || ch == '{' || ch == '}' || ch == '(' || ch == ')' || ch == '[' || ch == ']' || ch == ';';
+    }
+
+    private void begin(long line) {
+        game.clear();
+        game.line = line;
+        position.resetBoard();
+        inGame = true;
+        inMoves = skipping = false;
+    }
+
+    // Entrega la partida en curso (si no se descartó). Devuelve 1 o 0.
+    private int finish(Consumer consumer) {
+        inGame = inMoves = false;
+        if (skipping) return 0;
+        plies += game.length();
+        consumer.accept(game);
+        return 1;
+    }
+
+    // [Nombre "Valor"] -> devuelve el índice siguiente a ']'
+    private int tag(ByteBuffer buf, int i, int end, long line, Consumer consumer) {
+        i++;
+        int nameStart = i;
+        while (i < end && buf.get(i) != ' ' && buf.get(i) != ']' && buf.get(i) != '\n') i++;
+        String name = decode(buf, nameStart, i);
+        while (i < end && buf.get(i) != '"' && buf.get(i) != ']' && buf.get(i) != '\n') i++;
+
+        int len = 0;
+        if (i < end && buf.get(i) == '"') {
+            for (i++; i < end && buf.get(i) != '"' && buf.get(i) != '\n'; i++) {
+                byte b = buf.get(i);
+                if (b == '\\' && i + 1 < end) b = buf.get(++i);
+                if (len == text.length) text = java.util.Arrays.copyOf(text, len * 2);
+                text[len++] = b;
+            }
+        }
+        while (i < end && buf.get(i) != ']' && buf.get(i) != '\n') i++;
+        if (i < end && buf.get(i) == ']') i++;
+
+        String value = new String(text, 0, len, StandardCharsets.UTF_8);
+        game.setTag(name, value);
+
+        if (name.equals("FEN") && !skipping) {
+            try {
+                FenParser.parse(value, 0, value.length(), line, board, fields);
+                position.setPosition(board, fields);
+                game.startFen = value;
+            } catch (FenException e) {
+                consumer.error(line, "FEN incorrecto: " + e.getMessage());
+                skipping = true;
+            }
+        }
+        return i;
+    }
+
+    private static String decode(ByteBuffer buf, int from, int to) {
+        byte[] b = new byte[to - from];
+        for (int k = 0; k < b.length; k++) b[k] = buf.get(from + k);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    // Número de jugada, resultado, NAG o jugada SAN. Devuelve partidas entregadas.
+    private int token(int start, int end, long line, Consumer consumer) {
+        int result = PgnGame.parseResult(chars, start, end);
+        if (result >= 0) {
+            if (!inGame) return 0;                     // resultado suelto
+            game.result = result;
+            return finish(consumer);
+        }
+
+        char first = chars.charAt(start);
+        if (first == '$' || first == ')' || first == ']' || first == '}') return 0;
+
+        // "12." "12..." o "12.e4"
+        if (first >= '0' && first <= '9' && !isCastling(start, end)) {
+            int i = start;
+            while (i < end && chars.charAt(i) >= '0' && chars.charAt(i) <= '9') i++;
+            while (i < end && chars.charAt(i) == '.') i++;
+            if (i == end) return 0;
+            start = i;
+        }
+        while (start < end && chars.charAt(start) == '.') start++;
+        if (start == end) return 0;
+
+        if (!inGame) begin(line);
+        inMoves = true;
+        if (skipping) return 0;
+
+        int move = san.parse(position, chars, start, end);
+        if (move == Move.NONE) {
+            consumer.error(line, "jugada ilegal o ambigua: " + chars.subSequence(start, end));
+            skipping = true;
+            return 0;
+        }
+        position.makeMove(move);
+        game.addMove(move);
+        return 0;
+    }
+
+    private boolean isCastling(int start, int end) {
+        return end - start >= 3 && chars.charAt(start) == '0' && chars.charAt(start + 1) == '-';
+    }
+
+    // ==========================================================
+    //                  ARCHIVOS PROYECTADOS
+    // ==========================================================
+
+    /** Lee el archivo entero en este hilo. Devuelve las partidas entregadas. */
+    public static long readFile(Path file, Consumer consumer) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            PgnReader reader = new PgnReader();
+            long[] cuts = split(ch, 1);
+            long line = 1, games = 0;
+            for (int k = 0; k + 1 < cuts.length; k++) {
+                ByteBuffer chunk = FenReader.map(ch, cuts[k], cuts[k + 1]);
+                games += reader.read(chunk, line, consumer);
+                line += FenReader.countLines(chunk);
+            }
+            return games;
+        }
+    }
+
+    /**
+     * Lee el archivo en lotes repartidos entre varios hilos. El consumidor
+     * debe ser seguro entre hilos. Devuelve las partidas entregadas.
+     */
+    public static long readFileParallel(Path file, int threads, Consumer consumer)
+            throws IOException, InterruptedException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            long[] cuts = split(ch, threads * 8);
+            int chunks = cuts.length - 1;
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            try {
+                // 1) líneas por lote, para numerar los errores
+                List<Future<Long>> counts = new ArrayList<>();
+                for (int k = 0; k < chunks; k++) {
+                    long from = cuts[k], to = cuts[k + 1];
+                    counts.add(pool.submit(() -> FenReader.countLines(FenReader.map(ch, from, to))));
+                }
+                long[] firstLine = new long[chunks];
+                long line = 1;
+                for (int k = 0; k < chunks; k++) {
+                    firstLine[k] = line;
+                    line += get(counts.get(k));
+                }
+
+                // 2) análisis
+                ThreadLocal<PgnReader> readers = ThreadLocal.withInitial(PgnReader::new);
+                List<Future<Long>> parsed = new ArrayList<>();
+                for (int k = 0; k < chunks; k++) {
+                    long from = cuts[k], to = cuts[k + 1], first = firstLine[k];
+                    parsed.add(pool.submit(() -> readers.get().read(FenReader.map(ch, from, to), first, consumer)));
+                }
+                long games = 0;
+                for (Future<Long> f : parsed) games += get(f);
+                return games;
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+    }
+
+    // Cortes al comienzo de una partida: línea en blanco seguida de una línea con '['
+    private static long[] split(FileChannel ch, int parts) throws IOException {
+        long size = ch.size();
+        long step = Math.max(1, Math.min(MAX_CHUNK / 2, (size + parts - 1) / Math.max(1, parts)));
+        List<Long> cuts = new ArrayList<>();
+        cuts.add(0L);
+        ByteBuffer probe = ByteBuffer.allocate(1 << 16);
+        long pos = step;
+        while (pos < size) {
+            long cut = -1;
+            int state = 0;          // 0: nada, 1: tras '\n', 2: tras línea en blanco
+            for (long p = pos; p < size && cut < 0; p += probe.capacity()) {
+                probe.clear();
+                int n = ch.read(probe, p);
+                if (n <= 0) break;
+                for (int j = 0; j < n && cut < 0; j++) {
+                    byte b = probe.get(j);
+                    if (b == '\n') state = state == 0 ? 1 : 2;
+                    else if (b == '[' && state == 2) cut = p + j;
+                    else if (b != '\r') state = 0;
+                }
+            }
+            if (cut < 0 || cut >= size) break;
+            if (cut - cuts.get(cuts.size() - 1) > MAX_CHUNK)
+                throw new IOException("PgnReader: no hay inicio de partida en " + (MAX_CHUNK / 2) + " bytes");
+            cuts.add(cut);
+            pos = cut + step;
+        }
+        cuts.add(size);
+        long[] out = new long[cuts.size()];
+        for (int k = 0; k < out.length; k++) out[k] = cuts.get(k);
+        return out;
+    }
+
+    private static long get(Future<Long> f) throws IOException, InterruptedException {
+        try {
+            return f.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    // ==========================================================
+    //                      LÍNEA DE COMANDOS
+    // ==========================================================
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.out.println("Uso: java PgnReader <archivo.pgn> [hilos] [salida.pgn]");
+            return;
+        }
+        Path file = Path.of(args[0]);
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+        java.util.concurrent.atomic.LongAdder plies = new java.util.concurrent.atomic.LongAdder();
+        java.util.concurrent.atomic.LongAdder errors = new java.util.concurrent.atomic.LongAdder();
+
+        PgnWriter writer = args.length > 2
+                ? new PgnWriter(java.nio.file.Files.newBufferedWriter(Path.of(args[2]), StandardCharsets.UTF_8))
+                : null;
+        if (writer != null) threads = 1;        // la salida conserva el orden
+
+        Consumer count = new Consumer() {
+            @Override
+            public void accept(PgnGame game) {
+                plies.add(game.length());
+                if (writer != null) {
+                    try {
+                        writer.write(game);
+                    } catch (IOException | FenException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+            }
+
+            @Override
+            public void error(long line, String message) {
+                errors.increment();
+                if (errors.sum() <= 10) System.err.println("línea " + line + ": " + message);
+            }
+        };
+
+        long t0 = System.nanoTime();
+        long games = threads > 1 ? readFileParallel(file, threads, count) : readFile(file, count);
+        double seconds = (System.nanoTime() - t0) / 1e9;
+        if (writer != null) writer.close();
+
+        System.out.printf("%d partidas, %d jugadas, %d descartadas en %.2f s: %.0f partidas/s, %.1f MB/s%n",
+                games, plies.sum(), errors.sum(), seconds, games / seconds,
+                java.nio.file.Files.size(file) / seconds / 1e6);
+    }
+}
@@ -0,0 +1,94 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+
+// ==========================================================
+//                      ESCRITOR DE PGN
+// ==========================================================
+//
+// Escribe partidas en PGN de exportación: etiquetas tal como están en el
+// PgnGame (añadiendo Result, SetUp y FEN si faltan), jugadas en SAN con
+// número de jugada y líneas de 80 columnas como máximo.
+
+public final class PgnWriter implements Closeable {
+
+    private static final int MAX_LINE = 80;
+
+    private final Writer out;
+    private final GameState position = new GameState();
+    private final San san = new San();
+    private final StringBuilder sb = new StringBuilder(4096);
+    private final StringBuilder word = new StringBuilder(16);
+
+    public PgnWriter(Writer out) {
+        this.out = out;
+    }
+
+    public void write(PgnGame game) throws IOException, FenException {
+        sb.setLength(0);
+        append(game, sb);
+        out.append(sb);
+    }
+
+    /** Añade a dst la partida en PGN, terminada en una línea en blanco. */
+    public void append(PgnGame game, StringBuilder dst) throws FenException {
+        // etiquetas
+        String result = PgnGame.resultText(game.result);
+        for (int i = 0; i < game.tagCount(); i++) {
+            String name = game.tagName(i);
+            String value = name.equals("Result") ? result : game.tagValue(i);
+            appendTag(dst, name, value);
+        }
+        if (game.getTag("Result") == null) appendTag(dst, "Result", result);
+        if (game.startFen != null) {
+            if (game.getTag("SetUp") == null) appendTag(dst, "SetUp", "1");
+            if (game.getTag("FEN") == null) appendTag(dst, "FEN", game.startFen);
+        }
+        dst.append('\n');
+
+        // jugadas
+        game.start(position);
+        int column = 0;
+        for (int i = 0; i < game.length(); i++) {
+            int move = game.moveAt(i);
+            word.setLength(0);
+            if (position.whiteTurn) word.append(position.getFullmoveNumber()).append(". ");
+            else if (i == 0) word.append(position.getFullmoveNumber()).append("... ");
+            san.append(position, move, word);
+            position.makeMove(move);
+            column = appendWord(dst, word, column);
+        }
+        word.setLength(0);
+        word.append(result);
+        appendWord(dst, word, column);
+        dst.append("\n\n");
+    }
+
+    private static void appendTag(StringBuilder dst, String name, String value) {
+        dst.append('[').append(name).append(" \"");
+        for (int i = 0; i < value.length(); i++) {
+            char ch = value.charAt(i);
+            if (ch == '"' || ch == '\\') dst.append('\\');
+            dst.append(ch);
+        }
+        dst.append("\"]\n");
+    }
+
+    // Escribe w separándolo con un espacio o un salto de línea. Devuelve la nueva columna.
+    private static int appendWord(StringBuilder dst, StringBuilder w, int column) {
+        if (column > 0 && column + 1 + w.length() > MAX_LINE) {
+            dst.append('\n');
+            column = 0;
+        } else if (column > 0) {
+            dst.append(' ');
+            column++;
+        }
+        dst.append(w);
+        return column + w.length();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
@@ -0,0 +1,119 @@
+// ==========================================================
+//            TABLAS DE PIEZA-CASILLA (MATERIAL INCLUIDO)
+// ==========================================================
+//
+// MG[pieza][casilla] y EG[pieza][casilla] suman el valor de la pieza y su
+// bonificación por casilla en el medio juego y en el final. Las tablas de
+// abajo están escritas para las blancas con la fila 8 arriba, que es el
+// orden de las casillas (a8 = 0); las negras usan la casilla reflejada
+// (sq ^ 56) y el signo contrario.
+//
+// PHASE[pieza] es lo que aporta a la fase de juego (24 = apertura).
+// GameState mantiene las sumas en cada putPiece/removePiece.
+
+public final class PieceSquare {
+
+    private PieceSquare() {
+    }
+
+    public static final int[] VALUE_MG = {100, 320, 330, 500, 900, 0};
+    public static final int[] VALUE_EG = {120, 300, 320, 530, 950, 0};
+    public static final int[] PHASE = {0, 1, 1, 2, 4, 0, 0, 1, 1, 2, 4, 0};
+    public static final int MAX_PHASE = 24;
+
+    public static final int[][] MG = new int[12][64];
+    public static final int[][] EG = new int[12][64];
+
+    private static final int[] PAWN_MG = {
+              0,   0,   0,   0,   0,   0,   0,   0,
+             50,  50,  50,  50,  50,  50,  50,  50,
+             10,  10,  20,  30,  30,  20,  10,  10,
+              5,   5,  10,  25,  25,  10,   5,   5,
+              0,   0,   0,  20,  20,   0,   0,   0,
+              5,  -5, -10,   0,   0, -10,  -5,   5,
+              5,  10,  10, -20, -20,  10,  10,   5,
+              0,   0,   0,   0,   0,   0,   0,   0};
+
+    private static final int[] PAWN_EG = {
+              0,   0,   0,   0,   0,   0,   0,   0,
+             80,  80,  80,  80,  80,  80,  80,  80,
+             50,  50,  50,  50,  50,  50,  50,  50,
+             30,  30,  30,  30,  30,  30,  30,  30,
+             15,  15,  15,  15,  15,  15,  15,  15,
+              5,   5,   5,   5,   5,   5,   5,   5,
+              0,   0,   0,   0,   0,   0,   0,   0,
+              0,   0,   0,   0,   0,   0,   0,   0};
+
+    private static final int[] KNIGHT = {
+            -50, -40, -30, -30, -30, -30, -40, -50,
+            -40, -20,   0,   0,   0,   0, -20, -40,
+            -30,   0,  10,  15,  15,  10,   0, -30,
+            -30,   5,  15,  20,  20,  15,   5, -30,
+            -30,   0,  15,  20,  20,  15,   0, -30,
+            -30,   5,  10,  15,  15,  10,   5, -30,
+            -40, -20,   0,   5,   5,   0, -20, -40,
+            -50, -40, -30, -30, -30, -30, -40, -50};
+
+    private static final int[] BISHOP = {
+            -20, -10, -10, -10, -10, -10, -10, -20,
+            -10,   0,   0,   0,   0,   0,   0, -10,
+            -10,   0,   5,  10,  10,   5,   0, -10,
+            -10,   5,   5,  10,  10,   5,   5, -10,
+            -10,   0,  10,  10,  10,  10,   0, -10,
+            -10,  10,  10,  10,  10,  10,  10, -10,
+            -10,   5,   0,   0,   0,   0,   5, -10,
+            -20, -10, -10, -10, -10, -10, -10, -20};
+
+    private static final int[] ROOK = {
+              0,   0,   0,   0,   0,   0,   0,   0,
+              5,  10,  10,  10,  10,  10,  10,   5,
+             -5,   0,   0,   0,   0,   0,   0,  -5,
+             -5,   0,   0,   0,   0,   0,   0,  -5,
+             -5,   0,   0,   0,   0,   0,   0,  -5,
+             -5,   0,   0,   0,   0,   0,   0,  -5,
+             -5,   0,   0,   0,   0,   0,   0,  -5,
+              0,   0,   0,   5,   5,   0,   0,   0};
+
+    private static final int[] QUEEN = {
+            -20, -10, -10,  -5,  -5, -10, -10, -20,
+            -10,   0,   0,   0,   0,   0,   0, -10,
+            -10,   0,   5,   5,   5,   5,   0, -10,
+             -5,   0,   5,   5,   5,   5,   0,  -5,
+              0,   0,   5,   5,   5,   5,   0,  -5,
+            -10,   5,   5,   5,   5,   5,   0, -10,
+            -10,   0,   5,   0,   0,   0,   0, -10,
+            -20, -10, -10,  -5,  -5, -10, -10, -20};
+
+    private static final int[] KING_MG = {
+            -30, -40, -40, -50, -50, -40, -40, -30,
+            -30, -40, -40, -50, -50, -40, -40, -30,
+            -30, -40, -40, -50, -50, -40, -40, -30,
+            -30, -40, -40, -50, -50, -40, -40, -30,
+            -20, -30, -30, -40, -40, -30, -30, -20,
+            -10, -20, -20, -20, -20, -20, -20, -10,
+             20,  20,   0,   0,   0,   0,  20,  20,
+             20,  30,  10,   0,   0,  10,  30,  20};
+
+    private static final int[] KING_EG = {
+            -50, -40, -30, -20, -20, -30, -40, -50,
+            -30, -20, -10,   0,   0, -10, -20, -30,
+            -30, -10,  20,  30,  30,  20, -10, -30,
+            -30, -10,  30,  40,  40,  30, -10, -30,
+            -30, -10,  30,  40,  40,  30, -10, -30,
+            -30, -10,  20,  30,  30,  20, -10, -30,
+            -30, -30,   0,   0,   0,   0, -30, -30,
+            -50, -30, -30, -30, -30, -30, -30, -50};
+
+    static {
+        int[][] mg = {PAWN_MG, KNIGHT, BISHOP, ROOK, QUEEN, KING_MG};
+        int[][] eg = {PAWN_EG, KNIGHT, BISHOP, ROOK, QUEEN, KING_EG};
+        for (int t = 0; t < 6; t++) {
+            for (int sq = 0; sq < 64; sq++) {
+                MG[t][sq] = VALUE_MG[t] + mg[t][sq];
+                EG[t][sq] = VALUE_EG[t] + eg[t][sq];
+                MG[t + 6][sq ^ 56] = -MG[t][sq];
+                EG[t + 6][sq ^ 56] = -EG[t][sq];
+            }
+        }
+    }
+}
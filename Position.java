@@ -0,0 +1,219 @@
+// ==========================================================
+//              POSICIÓN INMUTABLE (VALOR DE 40 BYTES)
+// ==========================================================
+//
+// Los cuatro longs de GameState.pack (ocupación, dos longs de códigos de
+// pieza y turno/enroques/al paso/relojes) más la clave Zobrist. Al ser
+// inmutable se puede pasar entre hilos, guardar en cachés o usar como
+// clave de un mapa sin copias defensivas; play() devuelve una posición
+// nueva y deja esta intacta.
+//
+// play() trabaja sobre los longs empaquetados: quita y mete los códigos
+// de las casillas que cambian y actualiza la clave con XOR, como makeMove,
+// sin pasar por un GameState. Para generar jugadas o buscar se carga en
+// un GameState (GameState.loadPosition) con la clave ya conocida;
+// GameState.position() hace el camino inverso.
+
+public final class Position {
+
+    /** Posición inicial. */
+    public static final Position START = new GameState().position();
+
+    private final long occupied, nibbles0, nibbles1, meta;
+    private final long key;
+
+    Position(long occupied, long nibbles0, long nibbles1, long meta, long key) {
+        this.occupied = occupied;
+        this.nibbles0 = nibbles0;
+        this.nibbles1 = nibbles1;
+        this.meta = meta;
+        this.key = key;
+    }
+
+    // Un GameState por hilo para derivar posiciones sin asignar uno cada vez
+    private static final ThreadLocal<GameState> SCRATCH = ThreadLocal.withInitial(GameState::new);
+
+    public static Position fromFen(String fen) throws FenException {
+        GameState g = SCRATCH.get();
+        g.loadFEN(fen);
+        return g.position();
+    }
+
+    /** Posición tras move, que debe ser legal aquí (de generateMoves o legalMoves). */
+    public Position play(int move) {
+        int from = Move.from(move), to = Move.to(move);
+        int piece = pieceAt(from);
+        boolean white = piece < 6;
+        int castling = castlingRights(), ep = enPassantSquare();
+        long k = key ^ epKey(occupied, nibbles0, nibbles1, white, ep) ^ Zobrist.CASTLING[castling];
+        long[] b = {occupied, nibbles0, nibbles1};
+
+        int capSq = Move.isEnPassant(move) ? (white ? to + 8 : to - 8) : to;
+        int captured = pieceAt(capSq);
+        if (captured != GameState.EMPTY) {
+            remove(b, capSq);
+            k ^= Zobrist.PIECE[captured][capSq];
+        } else if (Move.isCastle(move)) {
+            // la torre salta al otro lado del rey
+            int rook = white ? GameState.WR : GameState.BR;
+            int rookFrom = to > from ? to + 1 : to - 2, rookTo = to > from ? to - 1 : to + 1;
+            remove(b, rookFrom);
+            insert(b, rookTo, rook);
+            k ^= Zobrist.PIECE[rook][rookFrom] ^ Zobrist.PIECE[rook][rookTo];
+        }
+
+        int promo = Move.promotion(move);
+        int moved = promo == 0 ? piece : white ? promo : promo + 6;
+        remove(b, from);
+        insert(b, to, moved);
+        k ^= Zobrist.PIECE[piece][from] ^ Zobrist.PIECE[moved][to];
+
+        castling &= GameState.CASTLE_MASK[from] & GameState.CASTLE_MASK[to];
+        ep = (move & Move.DOUBLE_PUSH) != 0 ? (from + to) >> 1 : -1;
+        int halfmove = (captured != GameState.EMPTY || piece == GameState.WP || piece == GameState.BP) ? 0 : halfmoveClock() + 1;
+        int fullmove = white ? fullmoveNumber() : fullmoveNumber() + 1;
+        k ^= Zobrist.SIDE ^ Zobrist.CASTLING[castling] ^ epKey(b[0], b[1], b[2], !white, ep);
+        long meta = (white ? 0L : 1L) | ((long) castling << 1) | ((long) (ep + 1) << 5)
+                | ((long) halfmove << 12) | ((long) fullmove << 32);
+        return new Position(b[0], b[1], b[2], meta, k);
+    }
+
+    /** Jugadas legales en out (al menos GameState.MAX_MOVES libres); devuelve cuántas. */
+    public int legalMoves(int[] out) {
+        return load().generateMoves(out, 0);
+    }
+
+    /** Jugada legal en notación UCI o Move.NONE. */
+    public int findUciMove(CharSequence uci) {
+        return load().findUciMove(uci);
+    }
+
+    public boolean isInCheck() {
+        GameState g = load();
+        return g.isInCheck(g.whiteTurn);
+    }
+
+    public String toFen() {
+        return load().generateFEN();
+    }
+
+    private GameState load() {
+        GameState g = SCRATCH.get();
+        g.unpack(occupied, nibbles0, nibbles1, meta, key);
+        return g;
+    }
+
+    // ==========================================================
+    //                 CÓDIGOS EMPAQUETADOS
+    // ==========================================================
+    // b = {ocupación, nibbles0, nibbles1}: los códigos van en el orden de
+    // las casillas ocupadas, así que quitar o meter una casilla desplaza
+    // los que la siguen, pasando de un long al otro por la posición 16.
+
+    private static int pieceAt(long occupied, long nibbles0, long nibbles1, int sq) {
+        if ((occupied >>> sq & 1) == 0) return GameState.EMPTY;
+        int i = Long.bitCount(occupied & ((1L << sq) - 1));
+        long nibbles = i < 16 ? nibbles0 : nibbles1;
+        return (int) (nibbles >>> (4 * (i & 15))) & 15;
+    }
+
+    private static void remove(long[] b, int sq) {
+        int i = Long.bitCount(b[0] & ((1L << sq) - 1));
+        b[0] &= ~(1L << sq);
+        if (i < 16) {
+            b[1] = removeNibble(b[1], i, b[2]);
+            b[2] >>>= 4;
+        } else {
+            b[2] = removeNibble(b[2], i - 16, 0);
+        }
+    }
+
+    private static void insert(long[] b, int sq, int code) {
+        int i = Long.bitCount(b[0] & ((1L << sq) - 1));
+        b[0] |= 1L << sq;
+        if (i < 16) {
+            b[2] = insertNibble(b[2], 0, b[1] >>> 60);
+            b[1] = insertNibble(b[1], i, code);
+        } else {
+            b[2] = insertNibble(b[2], i - 16, code);
+        }
+    }
+
+    // Quita el código i de w; el primero de next entra por arriba
+    private static long removeNibble(long w, int i, long next) {
+        long low = (1L << (4 * i)) - 1;
+        return (w & low) | ((w >>> 4) & ~low) | (next << 60);
+    }
+
+    // Mete code en la posición i de w; el último de w se pierde
+    private static long insertNibble(long w, int i, long code) {
+        long low = (1L << (4 * i)) - 1;
+        return (w & low) | (code << (4 * i)) | ((w << 4) & (~low << 4));
+    }
+
+    // Como GameState.epKey: solo cuenta si white (el bando que mueve) tiene
+    // un peón que pueda capturar al paso
+    private static long epKey(long occupied, long nibbles0, long nibbles1, boolean white, int ep) {
+        if (ep < 0) return 0L;
+        int pawn = white ? GameState.WP : GameState.BP;
+        for (long a = Bitboards.PAWN_ATTACKS[white ? 1 : 0][ep] & occupied; a != 0; a &= a - 1) {
+            if (pieceAt(occupied, nibbles0, nibbles1, Long.numberOfTrailingZeros(a)) == pawn) return Zobrist.EP_FILE[ep & 7];
+        }
+        return 0L;
+    }
+
+    // ==========================================================
+    //                        ACCESORES
+    // ==========================================================
+
+    /** Código de pieza en sq (fila * 8 + columna) o GameState.EMPTY. */
+    public int pieceAt(int sq) {
+        return pieceAt(occupied, nibbles0, nibbles1, sq);
+    }
+
+    public long occupied()          { return occupied; }
+    public boolean whiteToMove()    { return (meta & 1) != 0; }
+    public int castlingRights()     { return (int) (meta >>> 1) & 15; }
+    public int enPassantSquare()    { return (int) ((meta >>> 5) & 127) - 1; }
+    public int halfmoveClock()      { return (int) (meta >>> 12) & 0xFFFFF; }
+    public int fullmoveNumber()     { return (int) (meta >>> 32) & 0xFFFFF; }
+
+    /** Clave Zobrist (la misma que GameState.getKey en esta posición). */
+    public long key()               { return key; }
+
+    /** Escribe los cuatro longs de GameState.pack en dst[off .. off + 3]. */
+    public void pack(long[] dst, int off) {
+        dst[off] = occupied;
+        dst[off + 1] = nibbles0;
+        dst[off + 2] = nibbles1;
+        dst[off + 3] = meta;
+    }
+
+    void copyInto(GameState target) {
+        target.unpack(occupied, nibbles0, nibbles1, meta, key);
+    }
+
+    // ==========================================================
+    //                     IGUALDAD POR VALOR
+    // ==========================================================
+    // Iguales si coinciden todos los campos de la FEN, relojes incluidos.
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Position)) return false;
+        Position p = (Position) o;
+        return key == p.key && occupied == p.occupied && nibbles0 == p.nibbles0
+                && nibbles1 == p.nibbles1 && meta == p.meta;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (key ^ (key >>> 32) ^ meta);
+    }
+
+    @Override
+    public String toString() {
+        return toFen();
+    }
+}
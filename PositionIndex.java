@@ -0,0 +1,455 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+// ==========================================================
+//          ÍNDICE DE POSICIONES SOBRE UN ALMACÉN DE PARTIDAS
+// ==========================================================
+//
+// Un directorio con tramos ordenados ("runs"). Cada tramo cubre un rango
+// de partidas [first, end) de un GameStore y guarda dos tablas ordenadas
+// de pares (clave, partida) de 12 bytes:
+//
+//   - clave Zobrist de cada posición de cada partida
+//   - firma de material (GameState.materialSignature), una vez por cambio
+//
+// Añadir partidas nuevas escribe tramos nuevos; cuando hay demasiados se
+// funden los contiguos. Una consulta hace una búsqueda binaria por tramo
+// sobre el archivo proyectado y entrega los ids de partida en orden
+// creciente y sin repetir (los tramos no comparten partidas).
+//
+//   cabecera  MAGIC (8) | VERSION (4) | first (4) | end (4) | 0 (4)
+//             | entradas de claves (8) | entradas de material (8)
+
+public final class PositionIndex implements AutoCloseable {
+
+    private static final long MAGIC = 0x43484553_53504958L;     // "CHESSPIX"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 40;
+    private static final int ENTRY_BYTES = 12;
+    private static final String SUFFIX = ".pix";
+    private static final String OLD = ".old";                // tramos apartados, ver discard
+
+    /** Entradas en memoria antes de escribir un tramo (unos 200 MB). */
+    static final int RUN_ENTRIES = 1 << 24;
+    /** Tramos a partir de los cuales se funden. */
+    static final int MAX_RUNS = 8;
+    /** Un tramo fundido debe caber en una proyección. */
+    private static final long MAX_RUN_ENTRIES = (Integer.MAX_VALUE - HEADER_BYTES) / ENTRY_BYTES;
+
+    private final Path dir;
+    private final List<Run> runs = new ArrayList<>();
+
+    private PositionIndex(Path dir) {
+        this.dir = dir;
+    }
+
+    /** Abre el índice del directorio (lo crea si no existe). */
+    public static PositionIndex open(Path dir) throws IOException {
+        Files.createDirectories(dir);
+        PositionIndex index = new PositionIndex(dir);
+        index.load();
+        return index;
+    }
+
+    private void load() throws IOException {
+        closeRuns();
+        try (DirectoryStream<Path> old = Files.newDirectoryStream(dir, "*" + SUFFIX + OLD)) {
+            for (Path f : old) {
+                try {
+                    Files.deleteIfExists(f);
+                } catch (IOException e) {
+                    // aún proyectado en algún buffer vivo: otra vez será
+                }
+            }
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*" + SUFFIX)) {
+            for (Path f : files) runs.add(new Run(f));
+        }
+        // a igual inicio, el más ancho primero
+        runs.sort((a, b) -> a.first != b.first ? Integer.compare(a.first, b.first) : Integer.compare(b.end, a.end));
+
+        // Un tramo cubierto por otro más ancho es una fusión a medias: compact
+        // publica el tramo fundido (rename atómico) antes de borrar los dos
+        // originales, así que si se cortó entre medias sobran estos.
+        for (int i = 1; i < runs.size(); i++) {
+            Run prev = runs.get(i - 1), r = runs.get(i);
+            if (r.first >= prev.first && r.end <= prev.end) {
+                r.channel.close();
+                discard(r.file);
+                runs.remove(i--);
+            } else if (r.first != prev.end) {
+                throw new IOException("PositionIndex: tramos no contiguos en " + dir);
+            }
+        }
+    }
+
+    /** Partidas indexadas: [0, indexedGames()). */
+    public int indexedGames() {
+        return runs.isEmpty() ? 0 : runs.get(runs.size() - 1).end;
+    }
+
+    // ==========================================================
+    //                        CONSULTAS
+    // ==========================================================
+
+    /** Partidas que pasan por la posición exacta (misma clave Zobrist). */
+    public long findPosition(GameState pos, IntConsumer games) {
+        return find(false, pos.getKey(), games);
+    }
+
+    public long findPosition(String fen, IntConsumer games) throws FenException {
+        GameState pos = new GameState();
+        pos.loadFEN(fen);
+        return findPosition(pos, games);
+    }
+
+    /** Partidas que pasan por alguna posición con esta firma de material. */
+    public long findMaterial(long signature, IntConsumer games) {
+        return find(true, signature, games);
+    }
+
+    public long findMaterial(GameState pos, IntConsumer games) {
+        return findMaterial(pos.materialSignature(), games);
+    }
+
+    // Devuelve el número de ids entregados
+    private long find(boolean material, long key, IntConsumer games) {
+        long found = 0;
+        for (Run run : runs) {
+            long base = material ? run.materialStart : HEADER_BYTES;
+            long n = material ? run.materialCount : run.keyCount;
+            ByteBuffer buf = run.buf;
+
+            // primera entrada con clave >= key
+            long lo = 0, hi = n;
+            while (lo < hi) {
+                long mid = (lo + hi) >>> 1;
+                if (buf.getLong((int) (base + mid * ENTRY_BYTES)) < key) lo = mid + 1;
+                else hi = mid;
+            }
+            int last = -1;
+            for (long i = lo; i < n; i++) {
+                int off = (int) (base + i * ENTRY_BYTES);
+                if (buf.getLong(off) != key) break;
+                int game = buf.getInt(off + 8);
+                if (game == last) continue;
+                last = game;
+                games.accept(game);
+                found++;
+            }
+        }
+        return found;
+    }
+
+    // ==========================================================
+    //                   AÑADIR PARTIDAS NUEVAS
+    // ==========================================================
+
+    /**
+     * Indexa las partidas de store posteriores a indexedGames(). Devuelve
+     * cuántas se han añadido.
+     */
+    public int append(GameStore store) throws IOException {
+        int first = indexedGames();
+        int total = store.size();
+        if (first > total) throw new IOException("PositionIndex: el índice tiene más partidas que el almacén");
+
+        GameState work = new GameState();
+        Buffer keys = new Buffer(), materials = new Buffer();
+        int runFirst = first;
+        for (int g = first; g < total; g++) {
+            store.position(g, 0, work);
+            int n = store.moveCount(g);
+            long lastSig = -1;
+            for (int ply = 0; ; ply++) {
+                keys.add(work.getKey(), g);
+                long sig = work.materialSignature();
+                if (sig != lastSig) {
+                    materials.add(sig, g);
+                    lastSig = sig;
+                }
+                if (ply == n) break;
+                work.makeMove(GameStore.decode(work, store.rawMove(g, ply)));
+            }
+            if (keys.size + materials.size >= RUN_ENTRIES) {
+                keys.sort();
+                materials.sort();
+                writeRun(runFirst, g + 1, keys, materials);
+                runFirst = g + 1;
+            }
+        }
+        if (runFirst < total) {
+            keys.sort();
+            materials.sort();
+            writeRun(runFirst, total, keys, materials);
+        }
+        compact();
+        load();
+        return total - first;
+    }
+
+    // keys y materials deben estar ordenados; quedan vacíos
+    private void writeRun(int first, int end, Buffer keys, Buffer materials) throws IOException {
+        Path tmp = dir.resolve("tmp" + SUFFIX + ".part");
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer out = ByteBuffer.allocate(1 << 16);
+            out.putLong(MAGIC).putInt(VERSION).putInt(first).putInt(end).putInt(0)
+                    .putLong(keys.size).putLong(materials.size);
+            for (Buffer b : new Buffer[]{keys, materials}) {
+                for (int i = 0; i < b.size; i++) {
+                    if (out.remaining() < ENTRY_BYTES) drain(ch, out);
+                    out.putLong(b.keys[i]).putInt(b.games[i]);
+                }
+            }
+            drain(ch, out);
+        }
+        Files.move(tmp, dir.resolve(runName(first, end)), StandardCopyOption.ATOMIC_MOVE);
+        keys.size = materials.size = 0;
+    }
+
+    private static void drain(FileChannel ch, ByteBuffer out) throws IOException {
+        out.flip();
+        while (out.hasRemaining()) ch.write(out);
+        out.clear();
+    }
+
+    // Aparta un tramo que ya no hace falta. Borrarlo ahora falla en Windows
+    // mientras su MappedByteBuffer siga vivo (solo lo libera el GC), así que
+    // se renombra a .old y load() lo borra cuando pueda. Si tampoco se puede
+    // renombrar se queda: está cubierto por el fundido y load() lo salta.
+    private static void discard(Path file) {
+        try {
+            Files.move(file, file.resolveSibling(file.getFileName() + OLD), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            System.err.println("PositionIndex: no se puede apartar " + file + ": " + e.getMessage());
+        }
+    }
+
+    private static String runName(int first, int end) {
+        return String.format("%010d-%010d%s", first, end, SUFFIX);
+    }
+
+    // Funde tramos contiguos hasta que no haya más de MAX_RUNS (si caben)
+    private void compact() throws IOException {
+        load();
+        while (runs.size() > MAX_RUNS) {
+            // el par contiguo más pequeño
+            int best = -1;
+            long bestSize = Long.MAX_VALUE;
+            for (int i = 0; i + 1 < runs.size(); i++) {
+                long size = runs.get(i).entries() + runs.get(i + 1).entries();
+                if (size < bestSize) {
+                    best = i;
+                    bestSize = size;
+                }
+            }
+            if (bestSize > MAX_RUN_ENTRIES) return;
+            Run a = runs.get(best), b = runs.get(best + 1);
+            Buffer keys = new Buffer(), materials = new Buffer();
+            merge(a, b, false, keys);
+            merge(a, b, true, materials);
+            Path pa = a.file, pb = b.file;
+            int first = a.first, end = b.end;
+            closeRuns();
+            writeRun(first, end, keys, materials);
+            // si se corta aquí, load() aparta los restos la próxima vez
+            discard(pa);
+            discard(pb);
+            load();
+        }
+    }
+
+    // Mezcla ordenada de una tabla de dos tramos (a tiene las partidas menores)
+    private static void merge(Run a, Run b, boolean material, Buffer dst) {
+        long na = material ? a.materialCount : a.keyCount;
+        long nb = material ? b.materialCount : b.keyCount;
+        long ba = material ? a.materialStart : HEADER_BYTES;
+        long bb = material ? b.materialStart : HEADER_BYTES;
+        long i = 0, j = 0;
+        while (i < na || j < nb) {
+            boolean takeA;
+            if (i == na) takeA = false;
+            else if (j == nb) takeA = true;
+            else takeA = a.buf.getLong((int) (ba + i * ENTRY_BYTES)) <= b.buf.getLong((int) (bb + j * ENTRY_BYTES));
+            Run r = takeA ? a : b;
+            int off = (int) (takeA ? ba + i++ * ENTRY_BYTES : bb + j++ * ENTRY_BYTES);
+            dst.add(r.buf.getLong(off), r.buf.getInt(off + 8));
+        }
+    }
+
+    private void closeRuns() throws IOException {
+        for (Run r : runs) r.channel.close();
+        runs.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        closeRuns();
+    }
+
+    // ==========================================================
+    //                    TRAMOS Y BUFFERS
+    // ==========================================================
+
+    private static final class Run {
+        final Path file;
+        final FileChannel channel;
+        final MappedByteBuffer buf;
+        final int first, end;
+        final long keyCount, materialCount, materialStart;
+
+        Run(Path file) throws IOException {
+            this.file = file;
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+            long size = channel.size();
+            if (size < HEADER_BYTES || size > Integer.MAX_VALUE) {
+                channel.close();
+                throw new IOException("PositionIndex: tramo incorrecto " + file);
+            }
+            buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (buf.getLong(0) != MAGIC || buf.getInt(8) != VERSION) {
+                channel.close();
+                throw new IOException("PositionIndex: tramo incorrecto " + file);
+            }
+            first = buf.getInt(12);
+            end = buf.getInt(16);
+            keyCount = buf.getLong(24);
+            materialCount = buf.getLong(32);
+            materialStart = HEADER_BYTES + keyCount * ENTRY_BYTES;
+        }
+
+        long entries() {
+            return keyCount + materialCount;
+        }
+    }
+
+    // Pares (clave, partida) en arrays paralelos, ordenados por clave y partida
+    private static final class Buffer {
+        long[] keys = new long[1024];
+        int[] games = new int[1024];
+        int size;
+
+        void add(long key, int game) {
+            if (size == keys.length) {
+                keys = java.util.Arrays.copyOf(keys, size * 2);
+                games = java.util.Arrays.copyOf(games, size * 2);
+            }
+            keys[size] = key;
+            games[size++] = game;
+        }
+
+        void sort() {
+            quicksort(0, size - 1);
+        }
+
+        private void quicksort(int lo, int hi) {
+            while (hi - lo > 16) {
+                int mid = (lo + hi) >>> 1;
+                // mediana de tres como pivote
+                if (less(mid, lo)) swap(mid, lo);
+                if (less(hi, lo)) swap(hi, lo);
+                if (less(hi, mid)) swap(hi, mid);
+                long pk = keys[mid];
+                int pg = games[mid];
+                int i = lo, j = hi;
+                while (i <= j) {
+                    while (keys[i] < pk || (keys[i] == pk && games[i] < pg)) i++;
+                    while (keys[j] > pk || (keys[j] == pk && games[j] > pg)) j--;
+                    if (i <= j) swap(i++, j--);
+                }
+                // recursión en la parte menor para acotar la pila
+                if (j - lo < hi - i) {
+                    quicksort(lo, j);
+                    lo = i;
+                } else {
+                    quicksort(i, hi);
+                    hi = j;
+                }
+            }
+            for (int i = lo + 1; i <= hi; i++) {
+                for (int j = i; j > lo && less(j, j - 1); j--) swap(j, j - 1);
+            }
+        }
+
+        private boolean less(int a, int b) {
+            return keys[a] < keys[b] || (keys[a] == keys[b] && games[a] < games[b]);
+        }
+
+        private void swap(int a, int b) {
+            long k = keys[a];
+            keys[a] = keys[b];
+            keys[b] = k;
+            int g = games[a];
+            games[a] = games[b];
+            games[b] = g;
+        }
+    }
+
+    // ==========================================================
+    //                       FIRMAS
+    // ==========================================================
+
+    /**
+     * Firma de material a partir de las piezas de cada bando, p. ej.
+     * "KRPKR" (blancas: rey, torre y peón; negras: rey y torre).
+     */
+    public static long signatureOf(String material) {
+        String s = material.toUpperCase();
+        int second = s.indexOf('K', 1);
+        if (s.isEmpty() || s.charAt(0) != 'K' || second < 0)
+            throw new IllegalArgumentException("Material incorrecto: " + material);
+        long sig = 0;
+        for (int i = 1; i < s.length(); i++) {
+            if (i == second) continue;
+            int type = "PNBRQ".indexOf(s.charAt(i));
+            if (type < 0) throw new IllegalArgumentException("Material incorrecto: " + material);
+            int code = i < second ? type : type + 6;
+            sig += 1L << (4 * code);
+        }
+        return sig;
+    }
+
+    // ==========================================================
+    //                      LÍNEA DE COMANDOS
+    // ==========================================================
+    //
+    //   java PositionIndex <dir> append <almacén.cdb>
+    //   java PositionIndex <dir> fen "<fen>"
+    //   java PositionIndex <dir> material KRPKR
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3) {
+            System.out.println("Uso: java PositionIndex <dir> append|fen|material <argumento>");
+            return;
+        }
+        try (PositionIndex index = open(Path.of(args[0]))) {
+            long t0 = System.nanoTime();
+            if (args[1].equals("append")) {
+                try (GameStore store = new GameStore(Path.of(args[2]))) {
+                    int added = index.append(store);
+                    System.out.printf("%d partidas añadidas (%d en total) en %.2f s%n",
+                            added, index.indexedGames(), (System.nanoTime() - t0) / 1e9);
+                }
+                return;
+            }
+            StringBuilder sample = new StringBuilder();
+            IntConsumer print = g -> {
+                if (sample.length() < 200) sample.append(g).append(' ');
+            };
+            long n = args[1].equals("fen") ? index.findPosition(args[2], print)
+                    : index.findMaterial(signatureOf(args[2]), print);
+            System.out.printf("%d partidas en %.3f ms: %s%n", n, (System.nanoTime() - t0) / 1e6, sample);
+        }
+    }
+}
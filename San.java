@@ -0,0 +1,155 @@
+// ==========================================================
+//            NOTACIÓN ALGEBRAICA ESTÁNDAR (SAN)
+// ==========================================================
+//
+// parse busca la jugada entre las legales de la posición comparando pieza,
+// destino, coronación y desambiguación, sin crear objetos. append escribe
+// la SAN de una jugada legal con la desambiguación mínima y +/#.
+//
+// Cada instancia tiene su propio buffer de jugadas: una por hilo.
+
+public final class San {
+
+    private static final String PIECE_LETTERS = "PNBRQK";
+
+    private final int[] moves = new int[GameState.MAX_MOVES];
+
+    /**
+     * Jugada legal escrita en src[start, end) o Move.NONE si no existe o es
+     * ambigua. Admite "0-0", coronación con o sin '=', y sufijos + # ! ?.
+     */
+    public int parse(GameState pos, CharSequence src, int start, int end) {
+        while (end > start && isSuffix(src.charAt(end - 1))) end--;
+        if (end - start < 2) return Move.NONE;
+
+        int n = pos.generateMoves(moves, 0);
+
+        // enroques
+        char c0 = src.charAt(start);
+        if (c0 == 'O' || c0 == '0') {
+            int toCol;
+            if (isCastle(src, start, end, c0, 3)) toCol = 6;
+            else if (isCastle(src, start, end, c0, 5)) toCol = 2;
+            else return Move.NONE;
+            for (int i = 0; i < n; i++) {
+                if (Move.isCastle(moves[i]) && (Move.to(moves[i]) & 7) == toCol) return moves[i];
+            }
+            return Move.NONE;
+        }
+
+        // pieza
+        int type = GameState.WP;
+        int i = start;
+        int letter = PIECE_LETTERS.indexOf(c0);
+        if (letter > 0) {
+            type = letter;
+            i++;
+        }
+
+        // coronación al final: "=Q" o "Q"
+        int promo = 0;
+        int last = src.charAt(end - 1);
+        int promoLetter = PIECE_LETTERS.indexOf(last);
+        if (type == GameState.WP && promoLetter >= GameState.WN && promoLetter <= GameState.WQ) {
+            promo = promoLetter;
+            end--;
+            if (end > i && src.charAt(end - 1) == '=') end--;
+        }
+
+        // destino: los dos últimos caracteres
+        if (end - i < 2) return Move.NONE;
+        int toFile = src.charAt(end - 2) - 'a';
+        int toRank = src.charAt(end - 1) - '1';
+        if (toFile < 0 || toFile > 7 || toRank < 0 || toRank > 7) return Move.NONE;
+        int to = (7 - toRank) * 8 + toFile;
+        end -= 2;
+
+        // desambiguación entre pieza y destino: columna, fila y/o 'x'
+        int fromFile = -1, fromRank = -1;
+        for (; i < end; i++) {
+            char ch = src.charAt(i);
+            if (ch >= 'a' && ch <= 'h') fromFile = ch - 'a';
+            else if (ch >= '1' && ch <= '8') fromRank = ch - '1';
+            else if (ch != 'x' && ch != ':' && ch != '-') return Move.NONE;
+        }
+
+        int found = Move.NONE;
+        for (int k = 0; k < n; k++) {
+            int m = moves[k];
+            if (Move.to(m) != to || Move.promotion(m) != promo) continue;
+            int from = Move.from(m);
+            if (pos.pieceAt(from >> 3, from & 7) % 6 != type) continue;
+            if (fromFile >= 0 && (from & 7) != fromFile) continue;
+            if (fromRank >= 0 && 7 - (from >> 3) != fromRank) continue;
+            if (found != Move.NONE) return Move.NONE;      // ambigua
+            found = m;
+        }
+        return found;
+    }
+
+    public int parse(GameState pos, String san) {
+        return parse(pos, san, 0, san.length());
+    }
+
+    // "O-O" (len 3) u "O-O-O" (len 5), con la letra O o con ceros, sin mezclarlos
+    private static boolean isCastle(CharSequence src, int start, int end, char c, int len) {
+        if (end - start != len) return false;
+        for (int k = 0; k < len; k++) {
+            if (src.charAt(start + k) != ((k & 1) == 0 ? c : '-')) return false;
+        }
+        return true;
+    }
+
+    private static boolean isSuffix(char ch) {
+        return ch == '+' || ch == '#' || ch == '!' || ch == '?';
+    }
+
+    /** Añade a out la SAN de move, que debe ser legal en pos. */
+    public void append(GameState pos, int move, StringBuilder out) {
+        int from = Move.from(move), to = Move.to(move);
+        int type = pos.pieceAt(from >> 3, from & 7) % 6;
+
+        if (Move.isCastle(move)) {
+            out.append((to & 7) == 6 ? "O-O" : "O-O-O");
+        } else if (type == GameState.WP) {
+            if (Move.isCapture(move)) out.append((char) ('a' + (from & 7))).append('x');
+            appendSquare(to, out);
+            if (Move.isPromotion(move)) out.append('=').append(PIECE_LETTERS.charAt(Move.promotion(move)));
+        } else {
+            out.append(PIECE_LETTERS.charAt(type));
+
+            // otras piezas iguales que también llegan a `to`
+            boolean ambiguous = false, sameFile = false, sameRank = false;
+            int n = pos.generateMoves(moves, 0);
+            for (int k = 0; k < n; k++) {
+                int other = Move.from(moves[k]);
+                if (Move.to(moves[k]) != to || other == from) continue;
+                if (pos.pieceAt(other >> 3, other & 7) % 6 != type) continue;
+                ambiguous = true;
+                if ((other & 7) == (from & 7)) sameFile = true;
+                if ((other >> 3) == (from >> 3)) sameRank = true;
+            }
+            if (ambiguous) {
+                if (!sameFile) out.append((char) ('a' + (from & 7)));
+                else if (!sameRank) out.append((char) ('1' + 7 - (from >> 3)));
+                else appendSquare(from, out);
+            }
+            if (Move.isCapture(move)) out.append('x');
+            appendSquare(to, out);
+        }
+
+        pos.makeMove(move);
+        if (pos.isInCheck(pos.whiteTurn)) out.append(pos.countLegalMoves() == 0 ? '#' : '+');
+        pos.unmakeMove();
+    }
+
+    public String toSan(GameState pos, int move) {
+        StringBuilder sb = new StringBuilder(8);
+        append(pos, move, sb);
+        return sb.toString();
+    }
+
+    private static void appendSquare(int sq, StringBuilder out) {
+        out.append((char) ('a' + (sq & 7))).append((char) ('1' + 7 - (sq >> 3)));
+    }
+}
@@ -0,0 +1,394 @@
+import java.util.function.BooleanSupplier;
+
+// ==========================================================
+//              MOTOR DE BÚSQUEDA (ALFA-BETA)
+// ==========================================================
+//
+// Negamax alfa-beta con profundización iterativa, búsqueda de quietud
+// (solo capturas y coronaciones), ordenación por jugada de la tabla,
+// MVV-LVA y jugadas asesinas, y tabla de transposición compartible.
+// Repetición, regla de 50 jugadas y material insuficiente valen 0.
+//
+// La búsqueda trabaja sobre su propia copia de la posición con
+// makeMove/unmakeMove: no toca el GameState de la interfaz.
+//
+//   java Search "<fen>" [profundidad] [milisegundos]
+
+public final class Search {
+
+    public static final int INFINITE = 32000;
+    public static final int MATE = 31000;
+    public static final int MAX_PLY = 128;
+
+    /** Resultado de una búsqueda completa. */
+    public static final class Result {
+        public final int bestMove;
+        public final int score;
+        public final int depth;
+        public final long nodes;
+        public final long millis;
+        public final int[] pv;
+
+        Result(int bestMove, int score, int depth, long nodes, long millis, int[] pv) {
+            this.bestMove = bestMove;
+            this.score = score;
+            this.depth = depth;
+            this.nodes = nodes;
+            this.millis = millis;
+            this.pv = pv;
+        }
+
+        public long nps() {
+            return millis > 0 ? nodes * 1000 / millis : nodes * 1000;
+        }
+    }
+
+    /** Recibe cada iteración completada (desde el hilo de la búsqueda). */
+    @FunctionalInterface
+    public interface Listener {
+        void iteration(int depth, int score, long nodes, long millis, int[] pv);
+    }
+
+    private final TranspositionTable tt;
+    private final Evaluator evaluator;
+    private volatile Listener listener;
+    private final GameState pos = new GameState();
+
+    private final int[][] moves = new int[MAX_PLY + 1][GameState.MAX_MOVES];
+    private final int[][] scores = new int[MAX_PLY + 1][GameState.MAX_MOVES];
+    private final int[][] killers = new int[MAX_PLY + 1][2];
+
+    private volatile boolean stopped;
+    private long deadline;
+    private BooleanSupplier cancelled;
+    private long nodes;
+    private int rootBest;
+
+    public Search(TranspositionTable tt) {
+        this(tt, new DefaultEvaluator());
+    }
+
+    /** evaluator es solo de esta búsqueda (puede tener cachés sin sincronizar). */
+    public Search(TranspositionTable tt, Evaluator evaluator) {
+        this.tt = tt;
+        this.evaluator = evaluator;
+    }
+
+    /** Pide que la búsqueda en curso termine cuanto antes. */
+    public void stop() {
+        stopped = true;
+    }
+
+    public long getNodes() {
+        return nodes;
+    }
+
+    /** Listener de iteraciones o null para ninguno. */
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Busca desde root hasta maxDepth o hasta agotar timeMs (0 = sin límite).
+     * root no se modifica.
+     */
+    public Result search(GameState root, int maxDepth, long timeMs) {
+        return search(root, maxDepth, timeMs, null);
+    }
+
+    /**
+     * Como search, pero también para en cuanto cancelled devuelva true. Se
+     * consulta tras prepare() y luego junto al reloj, así que no depende de
+     * que un stop() llegue después de arrancar.
+     */
+    public Result search(GameState root, int maxDepth, long timeMs, BooleanSupplier cancelled) {
+        long start = System.nanoTime();
+        prepare();
+        this.cancelled = cancelled;
+        if (cancelled != null && cancelled.getAsBoolean()) stopped = true;
+        tt.newSearch();
+        return run(root, maxDepth, timeMs > 0 ? start + timeMs * 1_000_000L : Long.MAX_VALUE, 1);
+    }
+
+    /** Deja la búsqueda lista para arrancar; un stop() posterior ya no se pierde. */
+    void prepare() {
+        stopped = false;
+        cancelled = null;
+        nodes = 0;
+    }
+
+    /**
+     * Profundización iterativa desde firstDepth hasta maxDepth o hasta el
+     * instante deadline (System.nanoTime). No reinicia la señal de parada.
+     */
+    Result run(GameState root, int maxDepth, long deadline, int firstDepth) {
+        long start = System.nanoTime();
+        this.deadline = deadline;
+        nodes = 0;
+        pos.copyFrom(root);
+        for (int[] k : killers) k[0] = k[1] = Move.NONE;
+
+        int bestMove = Move.NONE, bestScore = 0, depthDone = 0;
+        maxDepth = Math.min(Math.max(maxDepth, 1), MAX_PLY - 1);
+
+        for (int depth = Math.min(firstDepth, maxDepth); depth <= maxDepth; depth++) {
+            rootBest = Move.NONE;
+            int score = negamax(depth, 0, -INFINITE, INFINITE);
+            // una iteración interrumpida no es fiable, salvo para tener alguna jugada
+            if (stopped && depthDone > 0) break;
+            if (rootBest != Move.NONE) {
+                bestMove = rootBest;
+                bestScore = score;
+                depthDone = depth;
+                Listener l = listener;
+                if (l != null && !stopped) {
+                    l.iteration(depth, score, nodes, (System.nanoTime() - start) / 1_000_000L,
+                            principalVariation(bestMove, depth));
+                }
+            }
+            // un mate cuya distancia cabe en la profundidad ya no puede mejorarse
+            if (stopped || MATE - Math.abs(score) <= depth) break;
+        }
+
+        long elapsed = System.nanoTime() - start;
+        if (Metrics.ENABLED) {
+            Metrics.SEARCH.record(elapsed);
+            Metrics.SEARCH_NODES.add(nodes);
+        }
+        long millis = elapsed / 1_000_000L;
+        return new Result(bestMove, bestScore, depthDone, nodes, millis, principalVariation(bestMove, depthDone));
+    }
+
+    // ==========================================================
+    //                        NEGAMAX
+    // ==========================================================
+
+    // Cada 2048 nodos: reloj y cancelación
+    private void poll() {
+        BooleanSupplier c = cancelled;
+        if (System.nanoTime() >= deadline || (c != null && c.getAsBoolean())) stopped = true;
+    }
+
+    private int negamax(int depth, int ply, int alpha, int beta) {
+        if ((++nodes & 2047) == 0) poll();
+        if (stopped) return 0;
+
+        // tablas: basta con que la posición se repita una vez (la raíz se busca siempre)
+        if (ply > 0 && (pos.halfmoveClock >= 100 || pos.isRepetition() || pos.isInsufficientMaterial())) return 0;
+
+        boolean inCheck = pos.inCheck(pos.whiteTurn);
+        if (inCheck && ply < MAX_PLY - 1) depth++;   // extensión de jaque
+        if (depth <= 0 || ply >= MAX_PLY - 1) return quiesce(ply, alpha, beta);
+
+        long key = pos.getKey();
+        int ttMove = Move.NONE;
+        long entry = tt.probe(key);
+        if (entry != 0) {
+            ttMove = TranspositionTable.move(entry);
+            if (ply > 0 && TranspositionTable.depth(entry) >= depth) {
+                int s = fromTT(TranspositionTable.score(entry), ply);
+                int bound = TranspositionTable.bound(entry);
+                if (bound == TranspositionTable.EXACT
+                        || (bound == TranspositionTable.LOWER && s >= beta)
+                        || (bound == TranspositionTable.UPPER && s <= alpha)) return s;
+            }
+        }
+
+        int[] list = moves[ply];
+        int n = pos.generateMoves(list, 0);
+        if (n == 0) return inCheck ? -MATE + ply : 0;   // mate o ahogado
+        scoreMoves(ply, n, ttMove);
+
+        int origAlpha = alpha;
+        int best = -INFINITE, bestMove = Move.NONE;
+        for (int i = 0; i < n; i++) {
+            int m = pickNext(ply, i, n);
+            pos.makeMove(m);
+            int score = -negamax(depth - 1, ply + 1, -beta, -alpha);
+            pos.unmakeMove();
+            if (stopped) return 0;
+
+            if (score > best) {
+                best = score;
+                bestMove = m;
+                if (score > alpha) {
+                    alpha = score;
+                    if (ply == 0) rootBest = m;
+                    if (alpha >= beta) {
+                        if (!Move.isCapture(m) && !Move.isPromotion(m) && killers[ply][0] != m) {
+                            killers[ply][1] = killers[ply][0];
+                            killers[ply][0] = m;
+                        }
+                        break;
+                    }
+                }
+            }
+        }
+
+        int bound = best >= beta ? TranspositionTable.LOWER
+                : best > origAlpha ? TranspositionTable.EXACT : TranspositionTable.UPPER;
+        tt.store(key, bestMove, toTT(best, ply), depth, bound);
+        return best;
+    }
+
+    // -------------------- QUIETUD ---------------------
+    // Solo capturas y coronaciones, salvo en jaque, donde se miran todas las evasiones.
+    private int quiesce(int ply, int alpha, int beta) {
+        if ((++nodes & 2047) == 0) poll();
+        if (stopped) return 0;
+        if (ply >= MAX_PLY - 1) return evaluate();
+
+        boolean inCheck = pos.inCheck(pos.whiteTurn);
+        int[] list = moves[ply];
+        int n = pos.generateMoves(list, 0);
+        if (n == 0) return inCheck ? -MATE + ply : 0;
+
+        int best = -INFINITE;
+        if (!inCheck) {
+            best = evaluate();
+            if (best >= beta) return best;
+            if (best > alpha) alpha = best;
+
+            // se descartan las jugadas tranquilas
+            int k = 0;
+            for (int i = 0; i < n; i++) {
+                if (Move.isCapture(list[i]) || Move.isPromotion(list[i])) list[k++] = list[i];
+            }
+            n = k;
+        }
+        scoreMoves(ply, n, Move.NONE);
+
+        for (int i = 0; i < n; i++) {
+            int m = pickNext(ply, i, n);
+            pos.makeMove(m);
+            int score = -quiesce(ply + 1, -beta, -alpha);
+            pos.unmakeMove();
+            if (stopped) return 0;
+
+            if (score > best) {
+                best = score;
+                if (score > alpha) {
+                    alpha = score;
+                    if (alpha >= beta) break;
+                }
+            }
+        }
+        return best;
+    }
+
+    // ==========================================================
+    //                  ORDENACIÓN DE JUGADAS
+    // ==========================================================
+
+    private void scoreMoves(int ply, int n, int ttMove) {
+        int[] list = moves[ply];
+        int[] sc = scores[ply];
+        for (int i = 0; i < n; i++) {
+            int m = list[i];
+            if (m == ttMove) {
+                sc[i] = 1_000_000;
+            } else if (Move.isCapture(m)) {
+                // MVV-LVA: víctima más valiosa, atacante menos valioso
+                int victim = Move.isEnPassant(m) ? GameState.WP : pos.squares[Move.to(m)] % 6;
+                int attacker = pos.squares[Move.from(m)] % 6;
+                sc[i] = 100_000 + victim * 10 - attacker + Move.promotion(m) * 100;
+            } else if (Move.isPromotion(m)) {
+                sc[i] = 90_000 + Move.promotion(m);
+            } else if (m == killers[ply][0]) {
+                sc[i] = 80_000;
+            } else if (m == killers[ply][1]) {
+                sc[i] = 70_000;
+            } else {
+                sc[i] = 0;
+            }
+        }
+    }
+
+    // Selección incremental: solo se ordena lo que se llega a recorrer
+    private int pickNext(int ply, int i, int n) {
+        int[] list = moves[ply];
+        int[] sc = scores[ply];
+        int best = i;
+        for (int j = i + 1; j < n; j++) {
+            if (sc[j] > sc[best]) best = j;
+        }
+        int m = list[best], s = sc[best];
+        list[best] = list[i]; sc[best] = sc[i];
+        list[i] = m; sc[i] = s;
+        return m;
+    }
+
+    // ==========================================================
+    //                       EVALUACIÓN
+    // ==========================================================
+
+    // Desde el punto de vista del bando que mueve (ver Evaluator)
+    private int evaluate() {
+        return evaluator.evaluate(pos);
+    }
+
+    // Las puntuaciones de mate se guardan relativas al nodo, no a la raíz
+    private static int toTT(int score, int ply) {
+        if (score >= MATE - MAX_PLY) return score + ply;
+        if (score <= -MATE + MAX_PLY) return score - ply;
+        return score;
+    }
+
+    private static int fromTT(int score, int ply) {
+        if (score >= MATE - MAX_PLY) return score - ply;
+        if (score <= -MATE + MAX_PLY) return score + ply;
+        return score;
+    }
+
+    // Variante principal reconstruida siguiendo las jugadas de la tabla
+    private int[] principalVariation(int first, int depth) {
+        int[] pv = new int[Math.max(depth, 1)];
+        int len = 0;
+        int m = first;
+        while (m != Move.NONE && len < pv.length && isLegal(m)) {
+            pv[len++] = m;
+            pos.makeMove(m);
+            long entry = tt.probe(pos.getKey());
+            m = entry != 0 ? TranspositionTable.move(entry) : Move.NONE;
+        }
+        for (int i = 0; i < len; i++) pos.unmakeMove();
+        return java.util.Arrays.copyOf(pv, len);
+    }
+
+    private boolean isLegal(int move) {
+        int[] list = moves[MAX_PLY];
+        int n = pos.generateMoves(list, 0);
+        for (int i = 0; i < n; i++) {
+            if (list[i] == move) return true;
+        }
+        return false;
+    }
+
+    /** Puntuación en texto: "+0.35" o "mate 3" (en jugadas, negativo si recibe mate). */
+    public static String formatScore(int score) {
+        if (score >= MATE - MAX_PLY) return "mate " + (MATE - score + 1) / 2;
+        if (score <= -MATE + MAX_PLY) return "mate -" + (MATE + score) / 2;
+        return String.format("%+.2f", score / 100.0);
+    }
+
+    // ==========================================================
+    //                      LÍNEA DE COMANDOS
+    // ==========================================================
+
+    public static void main(String[] args) throws Exception {
+        GameState g = new GameState();
+        if (args.length > 0 && !args[0].isBlank()) g.loadFEN(args[0]);
+        int depth = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        long millis = args.length > 2 ? Long.parseLong(args[2]) : 5000;
+
+        Result r = new Search(new TranspositionTable(64)).search(g, depth, millis);
+
+        StringBuilder pv = new StringBuilder();
+        for (int m : r.pv) pv.append(Move.toUci(m)).append(' ');
+        System.out.println("Mejor jugada: " + (r.bestMove == Move.NONE ? "(ninguna)" : Move.toUci(r.bestMove)));
+        System.out.println("Evaluación:   " + formatScore(r.score));
+        System.out.println("Profundidad:  " + r.depth);
+        System.out.println("Variante:     " + pv.toString().trim());
+        System.out.println("Nodos:        " + r.nodes + " en " + r.millis + " ms (" + r.nps() + " nodos/s)");
+    }
+}
@@ -0,0 +1,57 @@
+// ==========================================================
+//        BENCHMARK DE LAZY SMP (TIEMPO HASTA PROFUNDIDAD)
+// ==========================================================
+//
+// Para 1..N hilos busca cada posición hasta una profundidad fija, con la
+// tabla vacía, y compara el tiempo total con el de un solo hilo. Sirve
+// para dimensionar el número de hilos por máquina.
+//
+//   java SmpBenchmark [profundidad] [hilos máx.] [MB de tabla]
+
+public class SmpBenchmark {
+
+    static final String[] FENS = {
+            "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",
+            "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+            "r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10",
+            "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1"
+    };
+
+    public static void main(String[] args) throws Exception {
+        int depth = args.length > 0 ? Integer.parseInt(args[0]) : 7;
+        int maxThreads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        int megabytes = args.length > 2 ? Integer.parseInt(args[2]) : 64;
+
+        GameState[] roots = new GameState[FENS.length];
+        for (int i = 0; i < FENS.length; i++) {
+            roots[i] = new GameState();
+            roots[i].loadFEN(FENS[i]);
+        }
+
+        // calentamiento del JIT con un hilo
+        try (ParallelSearch warm = new ParallelSearch(new TranspositionTable(megabytes), 1)) {
+            for (GameState g : roots) warm.search(g, Math.max(1, depth - 2), 0);
+        }
+
+        System.out.printf("profundidad %d, %d posiciones%n", depth, roots.length);
+        System.out.printf("%6s %10s %14s %10s%n", "hilos", "ms", "nodos/s", "speedup");
+
+        double base = 0;
+        for (int threads = 1; threads <= maxThreads; threads++) {
+            TranspositionTable tt = new TranspositionTable(megabytes);
+            long nodes = 0, nanos = 0;
+            try (ParallelSearch smp = new ParallelSearch(tt, threads)) {
+                for (GameState g : roots) {
+                    tt.clear();
+                    // solo cuenta la búsqueda: ni el pool ni el borrado de la tabla
+                    long t0 = System.nanoTime();
+                    nodes += smp.search(g, depth, 0).nodes;
+                    nanos += System.nanoTime() - t0;
+                }
+            }
+            double ms = nanos / 1e6;
+            if (threads == 1) base = ms;
+            System.out.printf("%6d %10.0f %14.0f %9.2fx%n", threads, ms, nodes / (ms / 1000), base / ms);
+        }
+    }
+}
@@ -0,0 +1,241 @@
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// ==========================================================
+//              TABLAS DE FINALES (SONDEO)
+// ==========================================================
+//
+// Un archivo por material ("KQKR.tb") escrito por TablebaseGenerator:
+//
+//   cabecera  MAGIC (8) | VERSION (4) | piezas n (4) | códigos (8) | entradas (8)
+//   WDL       2 bits por posición: 0 tablas, 1 gana, 2 pierde, 3 no válida
+//   DTM       1 byte por posición: medias jugadas hasta el mate (0 en tablas)
+//
+// Índice = turno · 64^n + casillas de las piezas en base 64, en el orden de
+// los códigos: rey blanco, rey negro, piezas blancas y piezas negras (Q R B
+// N P). Las piezas iguales van en casillas crecientes. El resultado es
+// siempre para el bando que mueve; no hay enroques ni captura al paso, así
+// que las posiciones con una captura al paso legal no se sondean.
+//
+// El sondeo es O(1): una cuenta y dos lecturas del archivo proyectado.
+
+public final class Tablebase implements AutoCloseable {
+
+    public static final int DRAW = 0, WIN = 1, LOSS = 2, INVALID = 3;
+    /** Material sin tabla, posición con enroques, al paso o con más de MAX_PIECES piezas. */
+    public static final int NOT_FOUND = -1;
+
+    public static final int MAX_PIECES = 4;
+    static final long MAGIC = 0x43484553_53544231L;          // "CHESSTB1"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 32;
+    static final String SUFFIX = ".tb";
+    private static final String ORDER = "QRBNP";              // orden de las piezas en el nombre
+
+    private final Path dir;
+    // Tablas abiertas, buscadas por firma de material (pocas: búsqueda
+    // lineal). Los dos arrays van juntos en un objeto inmutable que se
+    // publica entero, así que un lector nunca ve uno nuevo con el otro viejo.
+    private static final class Opened {
+        final long[] signatures;
+        final Table[] tables;
+
+        Opened(long[] signatures, Table[] tables) {
+            this.signatures = signatures;
+            this.tables = tables;
+        }
+    }
+
+    private static final Opened NONE = new Opened(new long[0], new Table[0]);
+
+    private volatile Opened opened = NONE;
+
+    public Tablebase(Path dir) {
+        this.dir = dir;
+    }
+
+    /** WDL para el bando que mueve (DRAW, WIN, LOSS) o NOT_FOUND. */
+    public int probeWdl(GameState pos) {
+        Table t = table(pos);
+        if (t == null) return pos.occupied == (pos.pieces[GameState.WK] | pos.pieces[GameState.BK]) ? DRAW : NOT_FOUND;
+        int wdl = t.wdl(t.index(pos));
+        return wdl == INVALID ? NOT_FOUND : wdl;
+    }
+
+    /** Medias jugadas hasta el mate (0 en tablas) o NOT_FOUND. */
+    public int probeDtm(GameState pos) {
+        Table t = table(pos);
+        if (t == null) return pos.occupied == (pos.pieces[GameState.WK] | pos.pieces[GameState.BK]) ? 0 : NOT_FOUND;
+        long idx = t.index(pos);
+        return t.wdl(idx) == INVALID ? NOT_FOUND : t.dtm(idx);
+    }
+
+    private Table table(GameState pos) {
+        if (pos.getCastlingRights() != 0 || Long.bitCount(pos.occupied) > MAX_PIECES || canCaptureEnPassant(pos)) return null;
+        long sig = pos.materialSignature();
+        Opened o = opened;
+        for (int i = 0; i < o.signatures.length; i++) {
+            if (o.signatures[i] == sig) return o.tables[i];
+        }
+        return open(sig, materialName(pos));
+    }
+
+    // Las tablas no distinguen la casilla al paso: solo importa si la
+    // captura es legal (un peón que ataca la casilla puede estar clavado)
+    private static boolean canCaptureEnPassant(GameState pos) {
+        int ep = pos.getEnPassantSquare();
+        if (ep < 0) return false;
+        long pawns = pos.pieces[pos.whiteTurn ? GameState.WP : GameState.BP];
+        if ((Bitboards.PAWN_ATTACKS[pos.whiteTurn ? 1 : 0][ep] & pawns) == 0) return false;
+        int[] moves = new int[GameState.MAX_MOVES];
+        int n = pos.generateMoves(moves, 0);
+        for (int i = 0; i < n; i++) {
+            if (Move.isEnPassant(moves[i])) return true;
+        }
+        return false;
+    }
+
+    // Abre la tabla la primera vez (o recuerda que no existe con null)
+    private synchronized Table open(long sig, String material) {
+        Opened o = opened;
+        for (int i = 0; i < o.signatures.length; i++) {
+            if (o.signatures[i] == sig) return o.tables[i];
+        }
+        Table t = null;
+        Path file = dir.resolve(material + SUFFIX);
+        if (Files.exists(file)) {
+            try {
+                t = new Table(file);
+            } catch (IOException e) {
+                throw new IllegalStateException("Tablebase: no se puede abrir " + file, e);
+            }
+        }
+        Table[] ts = java.util.Arrays.copyOf(o.tables, o.tables.length + 1);
+        long[] sigs = java.util.Arrays.copyOf(o.signatures, o.signatures.length + 1);
+        ts[ts.length - 1] = t;
+        sigs[sigs.length - 1] = sig;
+        opened = new Opened(sigs, ts);
+        return t;
+    }
+
+    /** Olvida las tablas abiertas (p. ej. tras generar una nueva). */
+    public synchronized void reset() throws IOException {
+        close();
+        opened = NONE;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        for (Table t : opened.tables) {
+            if (t != null) t.channel.close();
+        }
+    }
+
+    // ==========================================================
+    //                     MATERIAL E ÍNDICES
+    // ==========================================================
+
+    /** Nombre del material de la posición, p. ej. "KQKR". */
+    public static String materialName(GameState pos) {
+        StringBuilder sb = new StringBuilder(8).append('K');
+        for (int side = 0; side < 2; side++) {
+            if (side == 1) sb.append('K');
+            for (int k = 0; k < ORDER.length(); k++) {
+                int code = "PNBRQ".indexOf(ORDER.charAt(k)) + 6 * side;
+                for (int c = Long.bitCount(pos.pieces[code]); c > 0; c--) sb.append(ORDER.charAt(k));
+            }
+        }
+        return sb.toString();
+    }
+
+    /** Ordena las piezas de cada bando como en los nombres de archivo ("KPQKR" -> "KQPKR"). */
+    public static String normalize(String material) {
+        String s = material.toUpperCase();
+        int second = s.indexOf('K', 1);
+        if (s.isEmpty() || s.charAt(0) != 'K' || second < 0)
+            throw new IllegalArgumentException("Material incorrecto: " + material);
+        StringBuilder sb = new StringBuilder(s.length());
+        for (int side = 0; side < 2; side++) {
+            String part = side == 0 ? s.substring(1, second) : s.substring(second + 1);
+            sb.append('K');
+            for (int k = 0; k < ORDER.length(); k++) {
+                for (int i = 0; i < part.length(); i++) {
+                    if (part.charAt(i) == ORDER.charAt(k)) sb.append(part.charAt(i));
+                }
+            }
+        }
+        if (sb.length() != s.length()) throw new IllegalArgumentException("Material incorrecto: " + material);
+        return sb.toString();
+    }
+
+    /** Códigos de pieza en el orden del índice: WK, BK, blancas, negras. */
+    static int[] codes(String material) {
+        String s = normalize(material);
+        int second = s.indexOf('K', 1);
+        int[] codes = new int[s.length()];
+        codes[0] = GameState.WK;
+        codes[1] = GameState.BK;
+        int n = 2;
+        for (int i = 1; i < s.length(); i++) {
+            if (i == second) continue;
+            int type = "PNBRQ".indexOf(s.charAt(i));
+            codes[n++] = i < second ? type : type + 6;
+        }
+        return codes;
+    }
+
+    /** Posiciones de una tabla de n piezas: 2 · 64^n. */
+    static long entries(int n) {
+        return 2L << (6 * n);
+    }
+
+    // ==========================================================
+    //                      TABLA PROYECTADA
+    // ==========================================================
+
+    static final class Table {
+        final FileChannel channel;
+        final MappedByteBuffer buf;
+        final int[] codes;
+        final long entries;
+        final int dtmStart;
+
+        Table(Path file) throws IOException {
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+            buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            int n = buf.getInt(12);
+            if (buf.getLong(0) != MAGIC || buf.getInt(8) != VERSION || n < 2 || n > MAX_PIECES) {
+                channel.close();
+                throw new IOException("Tablebase: archivo incorrecto " + file);
+            }
+            codes = new int[n];
+            for (int i = 0; i < n; i++) codes[i] = buf.get(16 + i);
+            entries = buf.getLong(24);
+            dtmStart = (int) (HEADER_BYTES + entries / 4);
+        }
+
+        long index(GameState pos) {
+            long idx = pos.whiteTurn ? 0 : 1;
+            int i = 0;
+            while (i < codes.length) {
+                // las piezas iguales son consecutivas: se recorren en orden de casilla
+                for (long b = pos.pieces[codes[i]]; b != 0; b &= b - 1, i++) {
+                    idx = idx * 64 + Long.numberOfTrailingZeros(b);
+                }
+            }
+            return idx;
+        }
+
+        int wdl(long idx) {
+            return (buf.get((int) (HEADER_BYTES + (idx >>> 2))) >>> (2 * (idx & 3))) & 3;
+        }
+
+        int dtm(long idx) {
+            return buf.get((int) (dtmStart + idx)) & 0xFF;
+        }
+    }
+}
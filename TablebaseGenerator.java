@@ -0,0 +1,490 @@
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// ==========================================================
+//      GENERADOR DE TABLAS DE FINALES (ANÁLISIS RETRÓGRADO)
+// ==========================================================
+//
+// 1) Pasada inicial con GameState: marca las posiciones no válidas, los
+//    mates y ahogados, y resuelve las jugadas que cambian de material
+//    (capturas y coronaciones) sondeando las tablas menores, que se
+//    generan antes. Cuenta las jugadas "tranquilas" de cada posición.
+// 2) Por niveles L = 1, 2, ...: los predecesores (jugadas deshechas) de
+//    las posiciones perdidas en L-1 ganan en L; los de las ganadas en L
+//    descuentan una jugada y, si ya no les quedan, pierden.
+// 3) Lo que queda sin resolver es tablas.
+//
+// Cada paso recorre el índice en bloques repartidos entre los hilos; el
+// contador de jugadas se descuenta con un compareAndSet sobre el int que
+// guarda cuatro contadores de 8 bits.
+
+public final class TablebaseGenerator {
+
+    // estados durante la generación
+    private static final byte UNKNOWN = 0, WIN = 1, LOSS = 2, DRAW = 3, INVALID = 4;
+    private static final int BLOCK = 1 << 16;
+    private static final VarHandle INTS = MethodHandles.arrayElementVarHandle(int[].class);
+
+    private final Path dir;
+    private final int threads;
+    private final Tablebase probe;
+
+    public TablebaseGenerator(Path dir, int threads) throws IOException {
+        Files.createDirectories(dir);
+        this.dir = dir;
+        this.threads = threads;
+        this.probe = new Tablebase(dir);
+    }
+
+    /** Genera la tabla del material (y antes las menores de las que depende). */
+    public void generate(String material) throws IOException, InterruptedException {
+        String name = Tablebase.normalize(material);
+        int[] codes = Tablebase.codes(name);
+        if (codes.length > Tablebase.MAX_PIECES)
+            throw new IllegalArgumentException("TablebaseGenerator: como mucho " + Tablebase.MAX_PIECES + " piezas");
+        if (codes.length == 2 || Files.exists(dir.resolve(name + Tablebase.SUFFIX))) return;
+
+        for (String sub : conversions(codes)) generate(sub);
+        build(name, codes);
+        probe.reset();
+    }
+
+    // Materiales a los que se llega con una captura y/o una coronación
+    private static List<String> conversions(int[] codes) {
+        List<String> out = new ArrayList<>();
+        for (int i = 2; i < codes.length; i++) {
+            out.add(name(codes, i, -1, 0));
+            for (int j = 2; j < codes.length; j++) {
+                if (codes[j] % 6 != GameState.WP) continue;
+                for (int promo = GameState.WN; promo <= GameState.WQ; promo++) {
+                    if (j != i && (codes[j] < 6) != (codes[i] < 6)) out.add(name(codes, i, j, promo));
+                    out.add(name(codes, -1, j, promo));
+                }
+            }
+        }
+        out.removeIf(s -> s.length() == 2);
+        return new ArrayList<>(new java.util.LinkedHashSet<>(out));
+    }
+
+    // Material sin la pieza removed y con la pieza promoted convertida en promo
+    private static String name(int[] codes, int removed, int promoted, int promo) {
+        StringBuilder white = new StringBuilder("K"), black = new StringBuilder("K");
+        for (int i = 2; i < codes.length; i++) {
+            if (i == removed) continue;
+            int type = i == promoted ? promo : codes[i] % 6;
+            (codes[i] < 6 ? white : black).append("PNBRQ".charAt(type));
+        }
+        return Tablebase.normalize(white.append(black).toString());
+    }
+
+    // ==========================================================
+    //                       GENERACIÓN
+    // ==========================================================
+
+    private void build(String name, int[] codes) throws IOException, InterruptedException {
+        long t0 = System.nanoTime();
+        int n = codes.length;
+        long entries = Tablebase.entries(n);
+        if (entries > Integer.MAX_VALUE) throw new IllegalStateException("TablebaseGenerator: tabla demasiado grande");
+        int size = (int) entries;
+
+        Work w = new Work(name, codes, size);
+        System.out.printf("%s: %d posiciones, %d MB de trabajo%n", name, entries, 6L * size >> 20);
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            // 1) pasada inicial
+            forEachBlock(pool, size, (from, to) -> {
+                Scan scan = new Scan(w);
+                for (int idx = from; idx < to; idx++) scan.init(idx);
+                return null;
+            });
+            System.out.printf("  inicial: %d resueltas, %.1f s, %d MB en uso%n",
+                    w.resolved.get(), (System.nanoTime() - t0) / 1e9, usedMemory());
+
+            // 2) niveles
+            for (int level = 1; ; level++) {
+                if (level > 255) throw new IllegalStateException(name + ": DTM de más de 255 medias jugadas");
+                final int lv = level;
+                long before = w.resolved.get();
+                forEachBlock(pool, size, (from, to) -> {
+                    Scan scan = new Scan(w);
+                    for (int idx = from; idx < to; idx++) scan.wins(idx, lv);
+                    return null;
+                });
+                forEachBlock(pool, size, (from, to) -> {
+                    Scan scan = new Scan(w);
+                    for (int idx = from; idx < to; idx++) scan.losses(idx, lv);
+                    return null;
+                });
+                long found = w.resolved.get() - before;
+                if (found > 0 || level % 10 == 0)
+                    System.out.printf("  nivel %3d: %d nuevas, %.1f s%n", level, found, (System.nanoTime() - t0) / 1e9);
+                if (found == 0 && level > w.pending.get()) break;
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        // 3) tablas y escritura
+        long wins = 0, losses = 0;
+        for (int i = 0; i < size; i++) {
+            if (w.state[i] == UNKNOWN) w.state[i] = DRAW;
+            else if (w.state[i] == WIN) wins++;
+            else if (w.state[i] == LOSS) losses++;
+        }
+        write(name, codes, w);
+        System.out.printf("%s: %d ganadas, %d perdidas, en %.1f s%n", name, wins, losses, (System.nanoTime() - t0) / 1e9);
+    }
+
+    private static long usedMemory() {
+        Runtime rt = Runtime.getRuntime();
+        return (rt.totalMemory() - rt.freeMemory()) >> 20;
+    }
+
+    private interface Block {
+        Void run(int from, int to) throws Exception;
+    }
+
+    private void forEachBlock(ExecutorService pool, int size, Block block) throws InterruptedException {
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int from = 0; from < size; from += BLOCK) {
+            int f = from, t = Math.min(size, from + BLOCK);
+            tasks.add(() -> block.run(f, t));
+        }
+        for (Future<Void> fut : pool.invokeAll(tasks)) {
+            try {
+                fut.get();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("TablebaseGenerator: fallo en un hilo", e.getCause());
+            }
+        }
+    }
+
+    // Arrays compartidos de la tabla en construcción
+    private static final class Work {
+        final String name;
+        final int[] codes;
+        final byte[] state, dtm;
+        final int[] count;          // jugadas tranquilas sin resolver, 4 por int
+        final byte[] convWin;       // 1 + DTM de la mejor conversión ganadora (0: ninguna)
+        final byte[] convLoss;      // 1 + DTM de la peor conversión perdedora
+        final byte[] convDraw;      // 1 si alguna conversión lleva a tablas
+        final AtomicLong resolved = new AtomicLong();
+        final AtomicInteger pending = new AtomicInteger();     // último nivel con algo previsto
+
+        Work(String name, int[] codes, int size) {
+            this.name = name;
+            this.codes = codes;
+            state = new byte[size];
+            dtm = new byte[size];
+            count = new int[(size + 3) / 4];
+            convWin = new byte[size];
+            convLoss = new byte[size];
+            convDraw = new byte[size];
+        }
+
+        // Bloques alineados: cada int de count lo escribe un solo hilo en la pasada inicial
+        void setCount(int idx, int value) {
+            int shift = (idx & 3) * 8;
+            count[idx >>> 2] = (count[idx >>> 2] & ~(0xFF << shift)) | (value << shift);
+        }
+
+        // Descuenta una jugada y devuelve las que quedan
+        int decrement(int idx) {
+            int word = idx >>> 2, shift = (idx & 3) * 8;
+            while (true) {
+                int old = (int) INTS.getVolatile(count, word);
+                int left = ((old >>> shift) & 0xFF) - 1;
+                int updated = (old & ~(0xFF << shift)) | ((left & 0xFF) << shift);
+                if (INTS.compareAndSet(count, word, old, updated)) return left;
+            }
+        }
+
+        void resolve(int idx, byte value, int plies) {
+            dtm[idx] = (byte) plies;
+            state[idx] = value;
+            resolved.incrementAndGet();
+            pending.accumulateAndGet(plies, Math::max);
+        }
+    }
+
+    // Estado por hilo: posición de trabajo y casillas decodificadas
+    private final class Scan {
+        final Work w;
+        final int n;
+        final int[] sq;
+        final int[] board = new int[64];
+        final int[] fields = {1, 0, -1, 0, 1};
+        final int[] moves = new int[GameState.MAX_MOVES];
+        final GameState pos = new GameState();
+
+        Scan(Work w) {
+            this.w = w;
+            this.n = w.codes.length;
+            this.sq = new int[n];
+        }
+
+        // Decodifica idx en sq; devuelve el turno (0 blancas, 1 negras)
+        int decode(int idx) {
+            for (int i = n - 1; i >= 0; i--) {
+                sq[i] = idx & 63;
+                idx >>>= 6;
+            }
+            return idx;
+        }
+
+        int encode(int stm) {
+            int idx = stm;
+            for (int i = 0; i < n; i++) idx = idx * 64 + sq[i];
+            return idx;
+        }
+
+        // Casillas distintas, peones fuera de las filas 1 y 8 y piezas iguales en orden
+        boolean wellFormed() {
+            long occ = 0;
+            for (int i = 0; i < n; i++) {
+                long bit = 1L << sq[i];
+                if ((occ & bit) != 0) return false;
+                occ |= bit;
+                if (w.codes[i] % 6 == GameState.WP && (sq[i] < 8 || sq[i] >= 56)) return false;
+                if (i > 0 && w.codes[i] == w.codes[i - 1] && sq[i] < sq[i - 1]) return false;
+            }
+            return true;
+        }
+
+        // ---------- pasada inicial ----------
+        void init(int idx) {
+            int stm = decode(idx);
+            if (!wellFormed()) {
+                w.state[idx] = INVALID;
+                return;
+            }
+            java.util.Arrays.fill(board, GameState.EMPTY);
+            for (int i = 0; i < n; i++) board[sq[i]] = w.codes[i];
+            fields[0] = stm == 0 ? 1 : 0;
+            pos.setPosition(board, fields);
+            if (pos.isInCheck(!pos.whiteTurn)) {
+                w.state[idx] = INVALID;
+                return;
+            }
+
+            int count = pos.generateMoves(moves, 0);
+            if (count == 0) {
+                if (pos.isInCheck(pos.whiteTurn)) w.resolve(idx, LOSS, 0);
+                else w.resolve(idx, DRAW, 0);
+                return;
+            }
+
+            int quiet = 0, convWin = 0, convLoss = 0;
+            boolean convDraw = false;
+            for (int k = 0; k < count; k++) {
+                int m = moves[k];
+                if (!Move.isCapture(m) && !Move.isPromotion(m)) {
+                    quiet++;
+                    continue;
+                }
+                pos.makeMove(m);
+                int wdl = probe.probeWdl(pos);
+                int d = probe.probeDtm(pos);
+                pos.unmakeMove();
+                if (wdl == Tablebase.NOT_FOUND)
+                    throw new IllegalStateException(w.name + ": falta la tabla de " + Tablebase.materialName(pos));
+                if (wdl == Tablebase.LOSS) convWin = convWin == 0 ? d + 1 : Math.min(convWin, d + 1);
+                else if (wdl == Tablebase.WIN) convLoss = Math.max(convLoss, d + 1);
+                else convDraw = true;
+            }
+
+            w.setCount(idx, quiet);
+            w.convWin[idx] = (byte) convWin;
+            w.convLoss[idx] = (byte) convLoss;
+            w.convDraw[idx] = (byte) (convDraw ? 1 : 0);
+            if (convWin > 0) w.pending.accumulateAndGet(convWin, Math::max);
+            if (quiet == 0 && convWin == 0) {
+                if (convDraw) w.resolve(idx, DRAW, 0);
+                else w.resolve(idx, LOSS, convLoss);
+            }
+        }
+
+        // ---------- nivel L: ganadas ----------
+        void wins(int idx, int level) {
+            byte s = w.state[idx];
+            if (s == UNKNOWN && (w.convWin[idx] & 0xFF) == level) {
+                w.resolve(idx, WIN, level);
+            } else if (s == LOSS && (w.dtm[idx] & 0xFF) == level - 1) {
+                forEachPredecessor(idx, p -> {
+                    // si dos hilos llegan al mismo predecesor escriben lo mismo
+                    // (solo el recuento de nuevas puede salir algo mayor)
+                    if (w.state[p] == UNKNOWN) w.resolve(p, WIN, level);
+                });
+            }
+        }
+
+        // ---------- nivel L: perdidas ----------
+        void losses(int idx, int level) {
+            if (w.state[idx] != WIN || (w.dtm[idx] & 0xFF) != level) return;
+            forEachPredecessor(idx, p -> {
+                if (w.state[p] != UNKNOWN) return;
+                int left = w.decrement(p);
+                if (left != 0) return;
+                if (w.convWin[p] != 0) return;         // ganará en el nivel de su conversión
+                if (w.convDraw[p] != 0) w.resolve(p, DRAW, 0);
+                else w.resolve(p, LOSS, Math.max(level + 1, w.convLoss[p] & 0xFF));
+            });
+        }
+
+        // Posiciones desde las que una jugada tranquila lleva a idx
+        void forEachPredecessor(int idx, java.util.function.IntConsumer out) {
+            int stm = decode(idx);
+            int mover = stm ^ 1;
+            long occ = 0;
+            for (int i = 0; i < n; i++) occ |= 1L << sq[i];
+
+            for (int i = 0; i < n; i++) {
+                int code = w.codes[i];
+                if ((code < 6 ? 0 : 1) != mover) continue;
+                int at = sq[i];
+                long from;
+                switch (code % 6) {
+                    case GameState.WN: from = Bitboards.KNIGHT[at]; break;
+                    case GameState.WB: from = Bitboards.bishopAttacks(at, occ); break;
+                    case GameState.WR: from = Bitboards.rookAttacks(at, occ); break;
+                    case GameState.WQ: from = Bitboards.queenAttacks(at, occ); break;
+                    case GameState.WK: from = Bitboards.KING[at]; break;
+                    default: from = pawnOrigins(code == GameState.WP, at, occ);
+                }
+                for (long b = from & ~occ; b != 0; b &= b - 1) {
+                    sq[i] = Long.numberOfTrailingZeros(b);
+                    int p = canonical(i, mover);
+                    if (p >= 0) out.accept(p);
+                    decode(idx);
+                }
+            }
+        }
+
+        // Casillas desde las que un peón pudo avanzar (sin capturar) hasta at
+        long pawnOrigins(boolean white, int at, long occ) {
+            int step = white ? 8 : -8;          // las blancas avanzan hacia sq - 8
+            int one = at + step;
+            if (one < 8 || one >= 56 || ((occ >>> one) & 1) != 0) return 0;
+            long from = 1L << one;
+            int row = at >> 3;
+            if ((white && row == 4) || (!white && row == 3)) {
+                int two = at + 2 * step;
+                if (((occ >>> two) & 1) == 0) from |= 1L << two;
+            }
+            return from;
+        }
+
+        // Índice con las piezas iguales reordenadas tras mover la i; -1 si no es válido
+        int canonical(int i, int stm) {
+            if (i > 0 && w.codes[i] == w.codes[i - 1] && sq[i] < sq[i - 1]) swap(i, i - 1);
+            else if (i + 1 < n && w.codes[i] == w.codes[i + 1] && sq[i] > sq[i + 1]) swap(i, i + 1);
+            int p = encode(stm);
+            return w.state[p] == INVALID ? -1 : p;
+        }
+
+        void swap(int a, int b) {
+            int t = sq[a];
+            sq[a] = sq[b];
+            sq[b] = t;
+        }
+    }
+
+    // ==========================================================
+    //                        ESCRITURA
+    // ==========================================================
+
+    private void write(String name, int[] codes, Work w) throws IOException {
+        int size = w.state.length;
+        Path file = dir.resolve(name + Tablebase.SUFFIX);
+        Path tmp = dir.resolve(name + Tablebase.SUFFIX + ".part");
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer out = ByteBuffer.allocate(1 << 16);
+            out.putLong(Tablebase.MAGIC).putInt(Tablebase.VERSION).putInt(codes.length);
+            for (int i = 0; i < 8; i++) out.put((byte) (i < codes.length ? codes[i] : 0));
+            out.putLong(size);
+
+            // WDL: 4 posiciones por byte
+            for (int i = 0; i < size; i += 4) {
+                int b = 0;
+                for (int k = 0; k < 4; k++) b |= wdl(w.state[i + k]) << (2 * k);
+                if (!out.hasRemaining()) drain(ch, out);
+                out.put((byte) b);
+            }
+            // DTM
+            for (int i = 0; i < size; i++) {
+                if (!out.hasRemaining()) drain(ch, out);
+                out.put(w.state[i] == WIN || w.state[i] == LOSS ? w.dtm[i] : 0);
+            }
+            drain(ch, out);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static int wdl(byte state) {
+        switch (state) {
+            case WIN: return Tablebase.WIN;
+            case LOSS: return Tablebase.LOSS;
+            case INVALID: return Tablebase.INVALID;
+            default: return Tablebase.DRAW;
+        }
+    }
+
+    private static void drain(FileChannel ch, ByteBuffer out) throws IOException {
+        out.flip();
+        while (out.hasRemaining()) ch.write(out);
+        out.clear();
+    }
+
+    // ==========================================================
+    //                      LÍNEA DE COMANDOS
+    // ==========================================================
+    //
+    //   java TablebaseGenerator <dir> <hilos> KQK KRK KPK KQKR ...
+    //   java TablebaseGenerator <dir> probe "<fen>"
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3) {
+            System.out.println("Uso: java TablebaseGenerator <dir> <hilos> <material>... | <dir> probe <fen>");
+            return;
+        }
+        Path dir = Path.of(args[0]);
+        if (args[1].equals("probe")) {
+            GameState pos = new GameState();
+            pos.loadFEN(args[2]);
+            try (Tablebase tb = new Tablebase(dir)) {
+                int wdl = tb.probeWdl(pos);
+                String[] names = {"tablas", "gana", "pierde"};
+                if (wdl == Tablebase.NOT_FOUND) System.out.println("Sin tabla para " + Tablebase.materialName(pos));
+                else System.out.println(names[wdl] + ", DTM " + tb.probeDtm(pos) + " medias jugadas");
+
+                long t0 = System.nanoTime();
+                long sink = 0;
+                for (int i = 0; i < 1_000_000; i++) sink += tb.probeWdl(pos);
+                System.out.printf("%.0f ns por sondeo (%d)%n", (System.nanoTime() - t0) / 1e6, sink & 1);
+            }
+            return;
+        }
+        int threads = Integer.parseInt(args[1]);
+        TablebaseGenerator gen = new TablebaseGenerator(dir, threads);
+        for (int i = 2; i < args.length; i++) gen.generate(args[i]);
+    }
+}
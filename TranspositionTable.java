@@ -0,0 +1,84 @@
+// ==========================================================
+//             TABLA DE TRANSPOSICIÓN SIN BLOQUEOS
+// ==========================================================
+//
+// Tamaño fijo, dos longs por entrada dentro de un único long[]:
+//   table[2i]     = clave ^ datos
+//   table[2i + 1] = datos
+// Si otro hilo escribe la entrada a medias, la comprobación
+// (table[2i] ^ table[2i + 1]) == clave falla y se trata como un fallo de
+// tabla, así que varios hilos pueden compartirla sin sincronización.
+//
+// Datos empaquetados:
+//   bits  0-18  jugada (Move)
+//   bits 19-34  puntuación + 32768
+//   bits 35-42  profundidad
+//   bits 43-44  tipo de cota (EXACT, LOWER, UPPER)
+//   bits 45-50  edad (búsqueda en que se escribió)
+
+public final class TranspositionTable {
+
+    public static final int EXACT = 1, LOWER = 2, UPPER = 3;
+
+    private final long[] table;
+    private final int mask;
+    private int age;
+
+    /** Tabla de aproximadamente el tamaño indicado (redondeado a potencia de 2). */
+    public TranspositionTable(int megabytes) {
+        long entries = Long.highestOneBit(Math.max(1L, (long) megabytes << 20) / 16);
+        entries = Math.max(1024, Math.min(entries, 1L << 29));
+        table = new long[(int) entries * 2];
+        mask = (int) entries - 1;
+    }
+
+    /** Datos de la entrada para key, o 0 si no está. */
+    public long probe(long key) {
+        int i = ((int) key & mask) << 1;
+        long data = table[i + 1];
+        return (table[i] ^ data) == key ? data : 0L;
+    }
+
+    public void store(long key, int move, int score, int depth, int bound) {
+        int i = ((int) key & mask) << 1;
+        long old = table[i + 1];
+        boolean sameKey = (table[i] ^ old) == key;
+
+        // se conserva una entrada más profunda de la misma búsqueda, salvo cotas exactas
+        if (sameKey && bound != EXACT && age(old) == age && depth(old) > depth) return;
+        if (move == Move.NONE && sameKey) move = move(old);
+
+        long data = (move & 0x7FFFFL)
+                | ((long) (score + 32768) << 19)
+                | ((long) Math.min(depth, 255) << 35)
+                | ((long) bound << 43)
+                | ((long) age << 45);
+        table[i] = key ^ data;
+        table[i + 1] = data;
+    }
+
+    /** Marca el comienzo de una nueva búsqueda (las entradas viejas pasan a ser reemplazables). */
+    public void newSearch() {
+        age = (age + 1) & 63;
+    }
+
+    public void clear() {
+        java.util.Arrays.fill(table, 0L);
+    }
+
+    /** Ocupación en tantos por mil, estimada sobre las primeras 1000 entradas. */
+    public int hashfull() {
+        int used = 0, n = Math.min(1000, table.length / 2);
+        for (int i = 0; i < n; i++) {
+            long data = table[2 * i + 1];
+            if (data != 0 && age(data) == age) used++;
+        }
+        return used * 1000 / n;
+    }
+
+    public static int move(long data)  { return (int) (data & 0x7FFFF); }
+    public static int score(long data) { return (int) ((data >>> 19) & 0xFFFF) - 32768; }
+    public static int depth(long data) { return (int) ((data >>> 35) & 0xFF); }
+    public static int bound(long data) { return (int) ((data >>> 43) & 3); }
+    private static int age(long data)  { return (int) ((data >>> 45) & 63); }
+}
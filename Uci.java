@@ -0,0 +1,285 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// ==========================================================
+//                 PROTOCOLO UCI (CONSOLA)
+// ==========================================================
+//
+// Motor UCI sobre ParallelSearch para GUIs y gestores de torneos:
+//
+//   uci, isready, ucinewgame, setoption (Hash, Threads, BookFile)
+//   position startpos|fen <fen> [moves ...]
+//   go [depth n] [movetime ms] [wtime ms btime ms winc ms binc ms movestogo n] [infinite]
+//   stop, quit
+//
+// La entrada se lee en el hilo principal y la búsqueda corre en los
+// hilos de ParallelSearch, así que stop se atiende al momento: la
+// búsqueda mira la señal en cada nodo. Un hilo aparte espera el
+// resultado y escribe bestmove (con go infinite, solo tras stop).
+//
+//   java Uci
+//   java Main --uci
+
+public final class Uci {
+
+    private static final int DEFAULT_HASH_MB = 64;
+    private static final long MOVE_OVERHEAD_MS = 30;   // margen para la GUI y la E/S
+
+    private final PrintStream out;
+    private final GameState position = new GameState();
+    private TranspositionTable tt = new TranspositionTable(DEFAULT_HASH_MB);
+    private ParallelSearch smp = new ParallelSearch(tt, 1);
+    private OpeningBook book;
+
+    private final ExecutorService waiter = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "uci-search");
+        t.setDaemon(true);
+        return t;
+    });
+    private Future<?> searching;
+    private CountDownLatch stopSignal = new CountDownLatch(0);
+
+    public Uci(PrintStream out) {
+        this.out = out;
+    }
+
+    private synchronized void send(String line) {
+        out.println(line);
+        out.flush();
+    }
+
+    /** Lee órdenes hasta quit o fin de la entrada. */
+    public void loop(BufferedReader in) throws IOException {
+        String line;
+        while ((line = in.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty()) continue;
+            String[] tok = line.split("\\s+");
+            switch (tok[0]) {
+                case "uci":
+                    send("id name Ajedrez");
+                    send("id author Ajedrez");
+                    send("option name Hash type spin default " + DEFAULT_HASH_MB + " min 1 max 4096");
+                    send("option name Threads type spin default 1 min 1 max 256");
+                    send("option name BookFile type string default <empty>");
+                    send("uciok");
+                    break;
+                case "isready":
+                    send("readyok");
+                    break;
+                case "ucinewgame":
+                    awaitSearch();
+                    tt.clear();
+                    break;
+                case "setoption":
+                    awaitSearch();
+                    setOption(line);
+                    break;
+                case "position":
+                    awaitSearch();
+                    position(tok);
+                    break;
+                case "go":
+                    go(tok);
+                    break;
+                case "stop":
+                    stop();
+                    break;
+                case "quit":
+                    stop();
+                    awaitSearch();
+                    return;
+                default:
+                    send("info string orden desconocida: " + tok[0]);
+            }
+        }
+        stop();
+        awaitSearch();
+    }
+
+    // ==========================================================
+    //                  POSICIÓN Y OPCIONES
+    // ==========================================================
+
+    private void position(String[] tok) {
+        int i = 1;
+        try {
+            if (tok.length > 1 && tok[1].equals("startpos")) {
+                position.resetBoard();
+                i = 2;
+            } else if (tok.length > 1 && tok[1].equals("fen")) {
+                StringBuilder fen = new StringBuilder();
+                for (i = 2; i < tok.length && !tok[i].equals("moves"); i++) fen.append(tok[i]).append(' ');
+                position.loadFEN(fen.toString().trim());
+            } else {
+                send("info string position: falta startpos o fen");
+                return;
+            }
+        } catch (FenException e) {
+            send("info string " + e.getMessage());
+            return;
+        }
+        if (i < tok.length && tok[i].equals("moves")) {
+            for (i++; i < tok.length; i++) {
+                int m = position.findUciMove(tok[i]);
+                if (m == Move.NONE) {
+                    send("info string jugada ilegal " + tok[i]);
+                    return;
+                }
+                position.makeMove(m);
+            }
+        }
+    }
+
+    // setoption name <nombre> [value <valor>]
+    private void setOption(String line) {
+        int n = line.indexOf(" name "), v = line.indexOf(" value ");
+        if (n < 0) return;
+        String name = (v < 0 ? line.substring(n + 6) : line.substring(n + 6, v)).trim();
+        String value = v < 0 ? "" : line.substring(v + 7).trim();
+        try {
+            switch (name.toLowerCase()) {
+                case "hash":
+                    tt = new TranspositionTable(Math.max(1, Integer.parseInt(value)));
+                    rebuild(smp.threads());
+                    break;
+                case "threads":
+                    rebuild(Math.max(1, Integer.parseInt(value)));
+                    break;
+                case "bookfile":
+                    if (book != null) book.close();
+                    book = value.isEmpty() || value.equals("<empty>") ? null : new OpeningBook(Path.of(value));
+                    break;
+                default:
+                    send("info string opción desconocida: " + name);
+            }
+        } catch (NumberFormatException | IOException e) {
+            send("info string setoption " + name + ": " + e.getMessage());
+        }
+    }
+
+    private void rebuild(int threads) {
+        smp.close();
+        smp = new ParallelSearch(tt, threads);
+    }
+
+    // ==========================================================
+    //                        BÚSQUEDA
+    // ==========================================================
+
+    private void go(String[] tok) {
+        if (searching != null && !searching.isDone()) {
+            send("info string búsqueda en curso");
+            return;
+        }
+        int depth = Search.MAX_PLY - 1;
+        long movetime = 0, wtime = -1, btime = -1, winc = 0, binc = 0;
+        int movestogo = 0;
+        boolean infinite = false;
+        for (int i = 1; i < tok.length; i++) {
+            String key = tok[i];
+            if (key.equals("infinite")) {
+                infinite = true;
+                continue;
+            }
+            if (i + 1 >= tok.length) break;
+            long value;
+            try {
+                value = Long.parseLong(tok[i + 1]);
+            } catch (NumberFormatException e) {
+                continue;
+            }
+            switch (key) {
+                case "depth": depth = (int) Math.max(1, Math.min(value, Search.MAX_PLY - 1)); break;
+                case "movetime": movetime = value; break;
+                case "wtime": wtime = value; break;
+                case "btime": btime = value; break;
+                case "winc": winc = value; break;
+                case "binc": binc = value; break;
+                case "movestogo": movestogo = (int) value; break;
+                default: continue;
+            }
+            i++;
+        }
+
+        // con libro, la jugada sale sin buscar
+        if (book != null && !infinite) {
+            int m = book.pick(position, System.nanoTime() * 0x9E3779B97F4A7C15L);
+            if (m != Move.NONE) {
+                send("info string libro");
+                send("bestmove " + Move.toUci(m));
+                return;
+            }
+        }
+
+        long time = movetime;
+        long left = position.isWhiteTurn() ? wtime : btime;
+        if (time == 0 && left >= 0 && !infinite) {
+            long inc = position.isWhiteTurn() ? winc : binc;
+            time = left / (movestogo > 0 ? movestogo + 1 : 30) + inc * 3 / 4;
+            time = Math.max(1, Math.min(time, left - MOVE_OVERHEAD_MS));
+        }
+
+        CountDownLatch signal = new CountDownLatch(infinite ? 1 : 0);
+        stopSignal = signal;
+        long start = System.nanoTime();
+        ParallelSearch s = smp;
+        s.setListener((d, score, nodes, millis, pv) -> info(s, d, score, start, pv));
+        s.start(position, depth, infinite ? 0 : time);
+        searching = waiter.submit(() -> {
+            Search.Result r = s.awaitResult();
+            // go infinite: bestmove solo cuando llega stop
+            try {
+                signal.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            send(r == null || r.bestMove == Move.NONE ? "bestmove 0000" : "bestmove " + Move.toUci(r.bestMove));
+        });
+    }
+
+    private void info(ParallelSearch s, int depth, int score, long start, int[] pv) {
+        long nodes = s.getNodes();
+        long millis = Math.max(1, (System.nanoTime() - start) / 1_000_000L);
+        StringBuilder sb = new StringBuilder(160).append("info depth ").append(depth).append(" score ");
+        if (score >= Search.MATE - Search.MAX_PLY) sb.append("mate ").append((Search.MATE - score + 1) / 2);
+        else if (score <= -Search.MATE + Search.MAX_PLY) sb.append("mate -").append((Search.MATE + score) / 2);
+        else sb.append("cp ").append(score);
+        sb.append(" nodes ").append(nodes).append(" nps ").append(nodes * 1000 / millis)
+                .append(" time ").append(millis).append(" hashfull ").append(tt.hashfull()).append(" pv");
+        for (int m : pv) sb.append(' ').append(Move.toUci(m));
+        send(sb.toString());
+    }
+
+    private void stop() {
+        smp.stop();
+        stopSignal.countDown();
+    }
+
+    // Espera a que la búsqueda en curso haya escrito su bestmove
+    private void awaitSearch() {
+        Future<?> f = searching;
+        if (f == null) return;
+        try {
+            f.get();
+        } catch (Exception e) {
+            send("info string " + e);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        Metrics.register();
+        Metrics.printOnExit();      // a stderr: stdout es del protocolo
+        Uci uci = new Uci(System.out);
+        uci.loop(new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8)));
+        uci.smp.close();
+    }
+}
@@ -0,0 +1,31 @@
+import java.util.SplittableRandom;
+
+// ==========================================================
+//                  CLAVES ZOBRIST (64 BITS)
+// ==========================================================
+//
+// Un número aleatorio por (pieza, casilla), por combinación de derechos
+// de enroque, por columna de captura al paso y por turno. La clave de una
+// posición es el XOR de los que le aplican, así que cada jugada la
+// actualiza con unos pocos XOR. La semilla es fija: las claves son
+// estables entre ejecuciones y se pueden guardar en disco.
+
+public final class Zobrist {
+
+    static final long[][] PIECE = new long[12][64];
+    static final long[] CASTLING = new long[16];
+    static final long[] EP_FILE = new long[8];
+    static final long SIDE;   // se aplica cuando mueven las negras
+
+    static {
+        SplittableRandom rnd = new SplittableRandom(0x41_6A_65_64_72_65_7AL);
+        for (long[] row : PIECE) {
+            for (int sq = 0; sq < 64; sq++) row[sq] = rnd.nextLong();
+        }
+        for (int i = 0; i < 16; i++) CASTLING[i] = rnd.nextLong();
+        for (int i = 0; i < 8; i++) EP_FILE[i] = rnd.nextLong();
+        SIDE = rnd.nextLong();
+    }
+
+    private Zobrist() {}
+}